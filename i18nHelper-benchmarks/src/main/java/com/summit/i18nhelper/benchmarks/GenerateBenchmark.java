@@ -0,0 +1,88 @@
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.summit.i18nhelper.benchmarks;
+
+import com.summit.i18nhelper.BundleGenerator;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link BundleGenerator} writing the locale files of a translated pull
+ * file of {@link SyntheticBundles}.
+ *
+ * The output directory is emptied before every run, as in a clean build.
+ * With a small {@code memory} (in KB) the generator has to write out early,
+ * then drop and reload the keys of files it already wrote.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class GenerateBenchmark {
+
+    @Param({"1000", "100000"})
+    public int keys;
+    @Param({"2", "20"})
+    public int locales;
+    @Param({"65536"})
+    public long memory;
+    private SyntheticBundles bundles;
+    private File dir;
+    private File pullFile;
+    private File outputDir;
+
+    @Setup
+    public void setUp() throws IOException {
+        bundles = new SyntheticBundles(keys, locales, 42);
+        dir = Mojos.createTempDirectory("i18nHelper-generate");
+        pullFile = new File(dir, "translated.properties");
+        bundles.writePullFile(pullFile, 1);
+        outputDir = new File(dir, "classes");
+    }
+
+    @Setup(Level.Invocation)
+    public void clean() {
+        Mojos.delete(outputDir);
+    }
+
+    @TearDown
+    public void tearDown() {
+        Mojos.delete(dir);
+    }
+
+    @Benchmark
+    public File generate() throws IOException {
+        QuietLog log = new QuietLog();
+        new BundleGenerator(log, memory * 1024).generateResources(outputDir, pullFile, bundles.getLanguageCodes(), log);
+        return outputDir;
+    }
+}
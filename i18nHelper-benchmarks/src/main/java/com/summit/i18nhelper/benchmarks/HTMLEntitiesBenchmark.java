@@ -0,0 +1,104 @@
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.summit.i18nhelper.benchmarks;
+
+import com.tecnick.htmlutils.htmlentities.HTMLEntities;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Single pass {@link HTMLEntities} methods against the regex and substring
+ * based ones they replaced, see {@link LegacyHTMLEntities}.
+ *
+ * The texts are the size of a typical translated message: plain text, text
+ * with a few quotes and entities, and markup heavy text.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HTMLEntitiesBenchmark {
+
+    private static final int ALL = HTMLEntities.QUOTES | HTMLEntities.ANGLE_BRACKETS | HTMLEntities.AMPERSAND;
+    @Param({"plain", "quoted", "markup"})
+    public String text;
+    private String raw;
+    private String escaped;
+
+    @Setup
+    public void setUp() {
+        if ("plain".equals(text)) {
+            raw = "The file could not be saved because the disk is full, free some space and try again";
+        } else if ("quoted".equals(text)) {
+            raw = "Can't open \"settings\" - the file isn't readable & may be locked by another program";
+        } else {
+            raw = "<p>Click <a href=\"#\">'here'</a> & <b>save</b> the \"draft\" <i>before</i> leaving</p>";
+        }
+        escaped = HTMLEntities.escape(raw, ALL);
+    }
+
+    @Benchmark
+    public String legacyEscapeQuotes() {
+        return LegacyHTMLEntities.htmlQuotes(raw);
+    }
+
+    @Benchmark
+    public String escapeQuotes() {
+        return HTMLEntities.htmlQuotes(raw);
+    }
+
+    @Benchmark
+    public String legacyEscapeAll() {
+        return LegacyHTMLEntities.htmlQuotes(LegacyHTMLEntities.htmlAngleBrackets(LegacyHTMLEntities.htmlAmpersand(raw)));
+    }
+
+    @Benchmark
+    public String escapeAll() {
+        return HTMLEntities.escape(raw, ALL);
+    }
+
+    @Benchmark
+    public String legacyUnescapeAll() {
+        return LegacyHTMLEntities.unhtmlAmpersand(LegacyHTMLEntities.unhtmlAngleBrackets(LegacyHTMLEntities.unhtmlQuotes(escaped)));
+    }
+
+    @Benchmark
+    public String unescapeAll() {
+        return HTMLEntities.unescape(escaped, ALL);
+    }
+
+    @Benchmark
+    public String legacyUnhtmlentities() {
+        return LegacyHTMLEntities.unhtmlentities(escaped);
+    }
+
+    @Benchmark
+    public String unhtmlentities() {
+        return HTMLEntities.unhtmlentities(escaped);
+    }
+}
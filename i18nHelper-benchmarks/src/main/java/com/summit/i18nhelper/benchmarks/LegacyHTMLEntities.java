@@ -0,0 +1,128 @@
+package com.summit.i18nhelper.benchmarks;
+
+import com.tecnick.htmlutils.htmlentities.HTMLEntities;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The regex and substring based methods of {@link HTMLEntities} as they
+ * were before the single pass rewrite, kept as the benchmark baseline.<br/><br/>
+ * Copyright (c) 2004-2005 Tecnick.com S.r.l (www.tecnick.com) Via Ugo Foscolo
+ * n.19 - 09045 Quartu Sant'Elena (CA) - ITALY - www.tecnick.com -
+ * info@tecnick.com<br/>
+ * License: http://www.gnu.org/copyleft/lesser.html LGPL
+ * @author Nicola Asuni [www.tecnick.com].
+ */
+public final class LegacyHTMLEntities {
+
+    private static final Map<String, Integer> unhtmlentities_map = new HashMap<String, Integer>();
+
+    static {
+        for (Object[] entity : HTMLEntities.getEntitiesTable()) {
+            unhtmlentities_map.put((String) entity[0], (Integer) entity[1]);
+        }
+    }
+
+    private LegacyHTMLEntities() {
+    }
+
+    public static String unhtmlentities(String str) {
+        StringBuilder buf = new StringBuilder();
+
+        for (int i = 0; i < str.length(); ++i) {
+            char ch = str.charAt(i);
+            if (ch == '&') {
+                int semi = str.indexOf(';', i + 1);
+                if ((semi == -1) || ((semi - i) > 7)) {
+                    buf.append(ch);
+                    continue;
+                }
+                String entity = str.substring(i, semi + 1);
+                Integer iso;
+                if (entity.charAt(1) == ' ') {
+                    buf.append(ch);
+                    continue;
+                }
+                if (entity.charAt(1) == '#') {
+                    if (entity.charAt(2) == 'x') {
+                        iso = Integer.valueOf(Integer.parseInt(entity.substring(3, entity.length() - 1), 16));
+                    } else {
+                        iso = Integer.valueOf(entity.substring(2, entity.length() - 1));
+                    }
+                } else {
+                    iso = unhtmlentities_map.get(entity);
+                }
+                if (iso == null) {
+                    buf.append(entity);
+                } else {
+                    buf.append((char) (iso.intValue()));
+                }
+                i = semi;
+            } else {
+                buf.append(ch);
+            }
+        }
+        return buf.toString();
+    }
+
+    public static String htmlSingleQuotes(final String in) {
+        String str = in;
+        str = str.replaceAll("[\']", "&rsquo;");
+        str = str.replaceAll("&#039;", "&rsquo;");
+        str = str.replaceAll("&#145;", "&rsquo;");
+        str = str.replaceAll("&#146;", "&rsquo;");
+        return str;
+    }
+
+    public static String unhtmlSingleQuotes(final String str) {
+        return str.replaceAll("&rsquo;", "\'");
+    }
+
+    public static String htmlDoubleQuotes(final String in) {
+        String str = in;
+        str = str.replaceAll("[\"]", "&quot;");
+        str = str.replaceAll("&#147;", "&quot;");
+        str = str.replaceAll("&#148;", "&quot;");
+        return str;
+    }
+
+    public static String unhtmlDoubleQuotes(final String str) {
+        return str.replaceAll("&quot;", "\"");
+    }
+
+    public static String htmlQuotes(final String in) {
+        String str = in;
+        str = htmlDoubleQuotes(str);
+        str = htmlSingleQuotes(str);
+        return str;
+    }
+
+    public static String unhtmlQuotes(final String in) {
+        String str = in;
+        str = unhtmlDoubleQuotes(str);
+        str = unhtmlSingleQuotes(str);
+        return str;
+    }
+
+    public static String htmlAngleBrackets(final String in) {
+        String str = in;
+        str = str.replaceAll("<", "&lt;");
+        str = str.replaceAll(">", "&gt;");
+        return str;
+    }
+
+    public static String unhtmlAngleBrackets(final String in) {
+        String str = in;
+        str = str.replaceAll("&lt;", "<");
+        str = str.replaceAll("&gt;", ">");
+        return str;
+    }
+
+    public static String htmlAmpersand(final String str) {
+        return str.replaceAll("&", "&amp;");
+    }
+
+    public static String unhtmlAmpersand(final String str) {
+        return str.replaceAll("&amp;", "&");
+    }
+}
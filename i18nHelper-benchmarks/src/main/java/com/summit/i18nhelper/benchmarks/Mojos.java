@@ -0,0 +1,77 @@
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.summit.i18nhelper.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import org.apache.maven.plugin.AbstractMojo;
+
+/**
+ * Configures mojos outside of Maven, by setting their parameter fields the
+ * way Maven injects them.
+ */
+public final class Mojos {
+
+    private Mojos() {
+    }
+
+    /**
+     * Sets a parameter of {@code mojo}.
+     *
+     * @throws IllegalArgumentException if the mojo has no such field
+     */
+    public static <T extends AbstractMojo> T set(T mojo, String name, Object value) {
+        for (Class<?> type = mojo.getClass(); type != null; type = type.getSuperclass()) {
+            try {
+                Field field = type.getDeclaredField(name);
+                field.setAccessible(true);
+                field.set(mojo, value);
+                return mojo;
+            } catch (NoSuchFieldException ex) {
+                //declared further up
+            } catch (IllegalAccessException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+        throw new IllegalArgumentException(mojo.getClass().getName() + " has no parameter " + name);
+    }
+
+    /**
+     * Creates an empty directory for a benchmark to work in.
+     */
+    public static File createTempDirectory(String prefix) {
+        try {
+            return Files.createTempDirectory(prefix).toFile();
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Deletes a directory and everything in it.
+     */
+    public static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
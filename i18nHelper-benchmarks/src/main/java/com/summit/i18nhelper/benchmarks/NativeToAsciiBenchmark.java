@@ -0,0 +1,75 @@
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.summit.i18nhelper.benchmarks;
+
+import com.summit.i18nhelper.GoogleTranslateMojo;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link GoogleTranslateMojo#nativeToAscii(CharSequence)}, which escapes
+ * every translation before it is written.
+ *
+ * Latin translations are mostly ASCII with a few accents, CJK ones are
+ * escaped almost entirely, and English is returned as is.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NativeToAsciiBenchmark {
+
+    @Param({"ascii", "latin", "cjk"})
+    public String text;
+    private String value;
+    private final StringBuilder out = new StringBuilder();
+
+    @Setup
+    public void setUp() {
+        if ("ascii".equals(text)) {
+            value = "The file could not be saved because the disk is full, free some space and try again";
+        } else if ("latin".equals(text)) {
+            value = "Le fichier n'a pas pu être enregistré car le disque est plein, libérez de l'espace et réessayez";
+        } else {
+            value = "ディスクがいっぱいのため、ファイルを保存できませんでした。空き容量を増やしてもう一度お試しください";
+        }
+    }
+
+    @Benchmark
+    public String escape() {
+        return GoogleTranslateMojo.nativeToAscii(value);
+    }
+
+    @Benchmark
+    public StringBuilder appendTo() throws IOException {
+        out.setLength(0);
+        GoogleTranslateMojo.nativeToAscii(value, out);
+        return out;
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.summit.i18nhelper.benchmarks;
+
+import com.summit.i18nhelper.GenerateMojo;
+import com.summit.i18nhelper.GoogleTranslateMojo;
+import com.summit.i18nhelper.PullMojo;
+import com.summit.i18nhelper.PushMojo;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.shared.model.fileset.FileSet;
+
+/**
+ * Runs pull, translate and push or generate on a generated project tree,
+ * with translations served by a {@link StubTranslateServer}, and reports
+ * the wall time, requests, bytes and peak heap of each goal.
+ *
+ * Unlike the JMH suites it runs every goal once, end to end, the way a
+ * build does, so settings like {@code workers} can be tuned against a
+ * service with a given latency, error rate and quota:
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.summit.i18nhelper.benchmarks.PerformanceHarness \
+ *     --keys=100000 --locales=20 --latency=50 --errorRate=0.01 --workers=16
+ * </pre>
+ *
+ * Options, with their defaults:
+ * <ul>
+ * <li>{@code --keys=10000} {@code --locales=10} size of the project</li>
+ * <li>{@code --translated=0.8} share of keys already translated</li>
+ * <li>{@code --latency=20} milliseconds the stub takes per request</li>
+ * <li>{@code --errorRate=0} share of requests failing with a 503</li>
+ * <li>{@code --rateLimit=0} requests per second the stub accepts</li>
+ * <li>{@code --quota=0} characters the stub translates before failing</li>
+ * <li>{@code --workers=10} {@code --batchSize=50}
+ * {@code --requestsPerSecond=0} {@code --maxRetries=5}
+ * {@code --executionMode=threads} translate goal parameters</li>
+ * <li>{@code --threads=0} pull goal threads</li>
+ * <li>{@code --output=generate} {@code generate} or {@code push}</li>
+ * <li>{@code --dir} work directory, a temporary one by default, which is
+ * deleted afterwards</li>
+ * <li>{@code --verbose} shows the goals' logs</li>
+ * </ul>
+ * The exit code is 1 if a goal failed.
+ */
+public final class PerformanceHarness {
+
+    private final Map<String, String> options;
+    private final Log log;
+    private final List<String> report = new ArrayList<String>();
+
+    private PerformanceHarness(Map<String, String> options) {
+        this.options = options;
+        this.log = options.containsKey("verbose") ? new SystemStreamLog() : new QuietLog();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<String, String>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unknown argument " + arg);
+            }
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                options.put(arg.substring(2), "true");
+            } else {
+                options.put(arg.substring(2, eq), arg.substring(eq + 1));
+            }
+        }
+        System.exit(new PerformanceHarness(options).run() ? 0 : 1);
+    }
+
+    private boolean run() throws IOException {
+        String dirOption = options.get("dir");
+        File dir = dirOption == null ? Mojos.createTempDirectory("i18nHelper-harness") : new File(dirOption);
+        SyntheticBundles bundles = new SyntheticBundles(intOption("keys", 10000), intOption("locales", 10), 42);
+        File src = new File(dir, "src");
+        File target = new File(dir, "target");
+        File pullFile = new File(target, "pull.properties");
+        File translatedFile = new File(target, "translated.properties");
+        String output = option("output", "generate");
+
+        StubTranslateServer server = new StubTranslateServer(longOption("latency", 20));
+        boolean ok;
+        try {
+            server.setErrorRate(doubleOption("errorRate", 0));
+            server.setRateLimit(intOption("rateLimit", 0));
+            server.setCharacterQuota(longOption("quota", 0));
+            System.out.println("Generating " + bundles.getKeyCount() + " keys in " + bundles.getBundleCount()
+                    + " bundles, " + bundles.getLanguageCodes().size() + " locales, in " + dir);
+            bundles.writeBundles(src, doubleOption("translated", 0.8));
+
+            PullMojo pull = configure(new PullMojo(), target);
+            Mojos.set(pull, "outputDirectory", target);
+            Mojos.set(pull, "outputFileName", pullFile.getName());
+            Mojos.set(pull, "bundleLocations", new FileSet[]{SyntheticBundles.fileSet(src)});
+            Mojos.set(pull, "languageCodes", new ArrayList<String>(bundles.getLanguageCodes()));
+            Mojos.set(pull, "incremental", false);
+            Mojos.set(pull, "threads", intOption("threads", 0));
+            ok = measure("pull", pull, server, pullFile);
+
+            if (ok) {
+                int workers = intOption("workers", 10);
+                GoogleTranslateMojo translate = configure(new GoogleTranslateMojo(), target);
+                Mojos.set(translate, "outputDirectory", target);
+                Mojos.set(translate, "outputFileName", translatedFile.getName());
+                Mojos.set(translate, "fileToTranslate", pullFile);
+                Mojos.set(translate, "defaultLocale", "en");
+                Mojos.set(translate, "languageCodes", new ArrayList<String>(bundles.getLanguageCodes()));
+                Mojos.set(translate, "googleApiKey", "harness");
+                Mojos.set(translate, "httpReferrer", new URL("http://localhost/"));
+                Mojos.set(translate, "endpoint", server.getEndpoint());
+                Mojos.set(translate, "workers", workers);
+                Mojos.set(translate, "maxConnections", workers);
+                Mojos.set(translate, "connectTimeout", 10000);
+                Mojos.set(translate, "readTimeout", 30000);
+                Mojos.set(translate, "requestsPerSecond", doubleOption("requestsPerSecond", 0));
+                Mojos.set(translate, "maxRetries", intOption("maxRetries", 5));
+                Mojos.set(translate, "batchSize", intOption("batchSize", 50));
+                Mojos.set(translate, "executionMode", option("executionMode", "threads"));
+                //a run that failed on the same --dir is resumed
+                Mojos.set(translate, "journalFile", new File(target, "i18nHelper-translate.journal"));
+                Mojos.set(translate, "sourcesFile", new File(dir, "i18nHelper-translation-sources.dat"));
+                ok = measure("translate", translate, server, translatedFile);
+            }
+
+            if (ok && "push".equals(output)) {
+                PushMojo push = configure(new PushMojo(), target);
+                File pushed = new File(target, "pushed");
+                Mojos.set(push, "outputDirectory", pushed);
+                Mojos.set(push, "inputFile", translatedFile);
+                Mojos.set(push, "maxOpenFiles", 64);
+                ok = measure("push", push, server, pushed);
+            } else if (ok) {
+                GenerateMojo generate = configure(new GenerateMojo(), target);
+                Mojos.set(generate, "outputDirectory", target);
+                Mojos.set(generate, "genInputFile", translatedFile);
+                Mojos.set(generate, "languageCodes", new ArrayList<String>(bundles.getLanguageCodes()));
+                Mojos.set(generate, "genMemory", 64);
+                ok = measure("generate", generate, server, new File(target, "classes"));
+            }
+        } finally {
+            server.close();
+            if (dirOption == null) {
+                Mojos.delete(dir);
+            }
+        }
+
+        System.out.println();
+        System.out.println(String.format(Locale.ROOT, "%-10s %10s %10s %8s %8s %12s %12s %12s %10s",
+                "goal", "wall ms", "requests", "errors", "limited", "sent B", "received B", "written B", "heap MB"));
+        for (String line : report) {
+            System.out.println(line);
+        }
+        return ok;
+    }
+
+    private <T extends AbstractMojo> T configure(T mojo, File target) {
+        mojo.setLog(log);
+        //each goal leaves its metrics report next to its output
+        Mojos.set(mojo, "metricsDirectory", target);
+        return mojo;
+    }
+
+    /**
+     * Runs a goal and adds its line to the report.
+     *
+     * @param written the file or directory the goal writes
+     * @return false if the goal failed
+     */
+    private boolean measure(String goal, AbstractMojo mojo, StubTranslateServer server, File written) {
+        System.gc();
+        List<MemoryPoolMXBean> heap = new ArrayList<MemoryPoolMXBean>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                pool.resetPeakUsage();
+                heap.add(pool);
+            }
+        }
+        server.reset();
+        long start = System.nanoTime();
+        Exception failure = null;
+        try {
+            mojo.execute();
+        } catch (Exception ex) {
+            failure = ex;
+        }
+        long wallMillis = (System.nanoTime() - start) / 1000000;
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool : heap) {
+            //the pools peak at different times, their sum is an upper bound
+            peakHeap += pool.getPeakUsage().getUsed();
+        }
+        report.add(String.format(Locale.ROOT, "%-10s %10d %10d %8d %8d %12d %12d %12d %10.1f",
+                goal, wallMillis, server.getRequests(), server.getErrors(), server.getRateLimited(),
+                server.getBytesIn(), server.getBytesOut(), size(written), peakHeap / (1024.0 * 1024.0)));
+        if (failure != null) {
+            report.add(goal + " failed: " + failure.getMessage());
+            return false;
+        }
+        return true;
+    }
+
+    private static long size(File file) {
+        File[] children = file.listFiles();
+        if (children == null) {
+            return file.length();
+        }
+        long size = 0;
+        for (File child : children) {
+            size += size(child);
+        }
+        return size;
+    }
+
+    private String option(String name, String defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : value;
+    }
+
+    private int intOption(String name, int defaultValue) {
+        return Integer.parseInt(option(name, String.valueOf(defaultValue)));
+    }
+
+    private long longOption(String name, long defaultValue) {
+        return Long.parseLong(option(name, String.valueOf(defaultValue)));
+    }
+
+    private double doubleOption(String name, double defaultValue) {
+        return Double.parseDouble(option(name, String.valueOf(defaultValue)));
+    }
+}
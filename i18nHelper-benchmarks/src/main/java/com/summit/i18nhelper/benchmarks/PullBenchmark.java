@@ -0,0 +1,94 @@
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.summit.i18nhelper.benchmarks;
+
+import com.summit.i18nhelper.PullMojo;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.shared.model.fileset.FileSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The pull goal aggregating a tree of {@link SyntheticBundles} into one
+ * pull file.
+ *
+ * With {@code incremental} the manifest written by the first run is reused
+ * by the following ones, which measures the unchanged tree case of a
+ * typical rebuild. Larger trees can be run with for example
+ * {@code -p keys=1000000 -p locales=60}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class PullBenchmark {
+
+    @Param({"1000", "100000"})
+    public int keys;
+    @Param({"2", "20"})
+    public int locales;
+    @Param({"1", "4"})
+    public int threads;
+    @Param({"false", "true"})
+    public boolean incremental;
+    private SyntheticBundles bundles;
+    private File dir;
+    private File bundleDir;
+
+    @Setup
+    public void setUp() throws IOException {
+        bundles = new SyntheticBundles(keys, locales, 42);
+        dir = Mojos.createTempDirectory("i18nHelper-pull");
+        bundleDir = new File(dir, "src");
+        bundles.writeBundles(bundleDir, 0.9);
+    }
+
+    @TearDown
+    public void tearDown() {
+        Mojos.delete(dir);
+    }
+
+    @Benchmark
+    public File pull() throws MojoExecutionException {
+        PullMojo mojo = new PullMojo();
+        mojo.setLog(new QuietLog());
+        Mojos.set(mojo, "outputDirectory", new File(dir, "target"));
+        Mojos.set(mojo, "outputFileName", "pull.properties");
+        Mojos.set(mojo, "bundleLocations", new FileSet[]{SyntheticBundles.fileSet(bundleDir)});
+        Mojos.set(mojo, "languageCodes", new ArrayList<String>(bundles.getLanguageCodes()));
+        Mojos.set(mojo, "incremental", incremental);
+        Mojos.set(mojo, "manifestFile", new File(dir, "target/pull.manifest"));
+        Mojos.set(mojo, "threads", threads);
+        mojo.execute();
+        return new File(dir, "target/pull.properties");
+    }
+}
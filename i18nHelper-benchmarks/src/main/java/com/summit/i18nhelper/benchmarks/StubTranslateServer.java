@@ -0,0 +1,348 @@
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.summit.i18nhelper.benchmarks;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.tecnick.htmlutils.htmlentities.HTMLEntities;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A local server speaking the Google Translate v2 protocol, so the
+ * translation path can be measured without the real service.
+ *
+ * Every text is "translated" by prefixing it with the target language and
+ * HTML escaping it, the way Google escapes quotes and ampersands. Requests
+ * are answered after a fixed latency, on as many threads as there are
+ * requests in flight.
+ *
+ * The failures of the real service can be simulated: a share of requests
+ * failing with a server error, a per second rate limit answered with
+ * {@code 403 userRateLimitExceeded}, and a character quota after which every
+ * request gets {@code 403 dailyLimitExceeded}.
+ */
+public final class StubTranslateServer implements Closeable {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int ESCAPED = HTMLEntities.QUOTES | HTMLEntities.ANGLE_BRACKETS | HTMLEntities.AMPERSAND;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final long latencyMillis;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong texts = new AtomicLong();
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong rateLimited = new AtomicLong();
+    private final AtomicLong characters = new AtomicLong();
+    private final Random random = new Random(42);
+    private volatile double errorRate;
+    private volatile int rateLimit;
+    private volatile long characterQuota;
+    private long window;
+    private int windowRequests;
+
+    static {
+        //without it small responses wait for the client's delayed ACK, ~40ms each
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    /**
+     * Starts a server on a free local port.
+     *
+     * @param latencyMillis how long each request takes to answer
+     */
+    public StubTranslateServer(long latencyMillis) throws IOException {
+        this.latencyMillis = latencyMillis;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+        executor = Executors.newCachedThreadPool(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "stub-translate");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        server.setExecutor(executor);
+        server.createContext("/language/translate/v2", new HttpHandler() {
+
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    respond(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+    }
+
+    /**
+     * @return the URL to give {@link com.google.api.translate.TranslateV2}
+     * or the {@code endpoint} parameter of the translate goal
+     */
+    public URL getEndpoint() {
+        try {
+            return new URL("http", "127.0.0.1", server.getAddress().getPort(), "/language/translate/v2");
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * @param errorRate the share of requests answered with
+     * {@code 503 backendError}, from 0 to 1
+     */
+    public void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * @param rateLimit the most requests answered in a second, the others
+     * get {@code 403 userRateLimitExceeded}, 0 for no limit
+     */
+    public void setRateLimit(int rateLimit) {
+        this.rateLimit = rateLimit;
+    }
+
+    /**
+     * @param characterQuota the characters that can be translated, once
+     * they are used up requests get {@code 403 dailyLimitExceeded}, 0 for no
+     * quota
+     */
+    public void setCharacterQuota(long characterQuota) {
+        this.characterQuota = characterQuota;
+    }
+
+    /**
+     * @return every request received, failed ones included
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * @return the number of texts translated
+     */
+    public long getTexts() {
+        return texts.get();
+    }
+
+    /**
+     * @return the requests answered with a simulated server error
+     */
+    public long getErrors() {
+        return errors.get();
+    }
+
+    /**
+     * @return the requests rejected by the rate limit or the quota
+     */
+    public long getRateLimited() {
+        return rateLimited.get();
+    }
+
+    /**
+     * @return the bytes of the request URLs and bodies received
+     */
+    public long getBytesIn() {
+        return bytesIn.get();
+    }
+
+    /**
+     * @return the bytes of the response bodies sent
+     */
+    public long getBytesOut() {
+        return bytesOut.get();
+    }
+
+    /**
+     * Resets the counters.
+     */
+    public void reset() {
+        requests.set(0);
+        texts.set(0);
+        bytesIn.set(0);
+        bytesOut.set(0);
+        errors.set(0);
+        rateLimited.set(0);
+        characters.set(0);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void respond(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        String query = exchange.getRequestURI().getRawQuery();
+        String body = read(exchange.getRequestBody());
+        bytesIn.addAndGet(exchange.getRequestURI().toString().length() + body.length());
+        List<String> q = new ArrayList<String>();
+        String target = null;
+        for (String parameters : new String[]{query, body}) {
+            if (parameters == null || parameters.length() == 0) {
+                continue;
+            }
+            for (String parameter : parameters.split("&")) {
+                int eq = parameter.indexOf('=');
+                if (eq < 0) {
+                    continue;
+                }
+                String name = parameter.substring(0, eq);
+                String value = URLDecoder.decode(parameter.substring(eq + 1), "UTF-8");
+                if ("q".equals(name)) {
+                    q.add(value);
+                } else if ("target".equals(name)) {
+                    target = value;
+                }
+            }
+        }
+        pause(latencyMillis);
+        if (q.isEmpty() || target == null) {
+            send(exchange, 400, error(400, "Required parameter: " + (q.isEmpty() ? "q" : "target"), "required"));
+            return;
+        }
+        if (isError()) {
+            errors.incrementAndGet();
+            send(exchange, 503, error(503, "Backend Error", "backendError"));
+            return;
+        }
+        if (!isWithinRateLimit()) {
+            rateLimited.incrementAndGet();
+            send(exchange, 403, error(403, "User Rate Limit Exceeded", "userRateLimitExceeded"));
+            return;
+        }
+        if (!chargeQuota(q)) {
+            rateLimited.incrementAndGet();
+            send(exchange, 403, error(403, "Daily Limit Exceeded", "dailyLimitExceeded"));
+            return;
+        }
+        texts.addAndGet(q.size());
+        try {
+            JSONArray translations = new JSONArray();
+            for (String text : q) {
+                translations.put(new JSONObject().put("translatedText", HTMLEntities.escape(target + " " + text, ESCAPED)));
+            }
+            send(exchange, 200, new JSONObject().put("data", new JSONObject().put("translations", translations)).toString());
+        } catch (JSONException ex) {
+            throw new IOException(ex.getMessage());
+        }
+    }
+
+    private boolean isError() {
+        if (errorRate <= 0) {
+            return false;
+        }
+        synchronized (random) {
+            return random.nextDouble() < errorRate;
+        }
+    }
+
+    private synchronized boolean isWithinRateLimit() {
+        if (rateLimit <= 0) {
+            return true;
+        }
+        long second = System.nanoTime() / 1000000000L;
+        if (second != window) {
+            window = second;
+            windowRequests = 0;
+        }
+        return ++windowRequests <= rateLimit;
+    }
+
+    private boolean chargeQuota(List<String> q) {
+        long length = 0;
+        for (String text : q) {
+            length += text.length();
+        }
+        long used = characters.addAndGet(length);
+        if (characterQuota > 0 && used > characterQuota) {
+            characters.addAndGet(-length);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return a v2 error body
+     */
+    private static String error(int code, String message, String reason) {
+        try {
+            JSONObject error = new JSONObject().put("domain", "usageLimits").put("reason", reason).put("message", message);
+            return new JSONObject().put("error", new JSONObject()
+                    .put("errors", new JSONArray().put(error)).put("code", code).put("message", message)).toString();
+        } catch (JSONException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(UTF8);
+        bytesOut.addAndGet(bytes.length);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+            bytes.write(buffer, 0, n);
+        }
+        return new String(bytes.toByteArray(), UTF8);
+    }
+
+    private static void pause(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
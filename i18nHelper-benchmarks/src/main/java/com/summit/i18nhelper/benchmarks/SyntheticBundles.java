@@ -0,0 +1,274 @@
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.summit.i18nhelper.benchmarks;
+
+import com.summit.i18nhelper.GoogleTranslateMojo;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.apache.maven.shared.model.fileset.FileSet;
+
+/**
+ * Generates resource bundles of a given size, the same ones for the same
+ * seed.
+ *
+ * The keys are spread over bundles of {@link #KEYS_PER_BUNDLE} keys, twenty
+ * bundles to a directory. Values are short sentences, some with quotes,
+ * ampersands and {@code {0}} placeholders, and translations mix in non-ASCII
+ * characters, so escaping is exercised the way a real project does. Sizes
+ * from a thousand to a million keys and up to {@link #MAX_LOCALES} locales
+ * are realistic.
+ */
+public final class SyntheticBundles {
+
+    /**
+     * The number of keys in a bundle, the last one may have fewer.
+     */
+    public static final int KEYS_PER_BUNDLE = 250;
+    private static final int BUNDLES_PER_DIRECTORY = 20;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String[] LOCALES = {
+        "de", "fr", "es", "it", "ja", "pt", "ru", "zh", "ko", "nl",
+        "pl", "sv", "da", "fi", "no", "cs", "hu", "tr", "el", "iw",
+        "ar", "hi", "th", "vi", "id", "ms", "ro", "uk", "bg", "hr",
+        "sk", "sl", "sr", "lt", "lv", "et", "ca", "eu", "gl", "is",
+        "ga", "cy", "mt", "sq", "mk", "be", "ka", "hy", "az", "kk",
+        "uz", "fa", "ur", "bn", "ta", "te", "ml", "kn", "mr", "gu"
+    };
+    /**
+     * The largest number of locales bundles can be generated for.
+     */
+    public static final int MAX_LOCALES = LOCALES.length;
+    private static final String[] WORDS = {
+        "the", "file", "could", "not", "be", "saved", "because", "disk", "is", "full",
+        "please", "try", "again", "later", "your", "account", "settings", "were", "updated", "select",
+        "an", "item", "from", "list", "to", "continue", "password", "must", "contain", "at",
+        "least", "one", "number", "and", "letter", "connection", "lost", "while", "loading", "page",
+        "click", "here", "open", "report", "delete", "selected", "messages", "permanently", "invalid", "date"
+    };
+    private static final String[] ACCENTS = {
+        "é", "ü", "ñ", "å", "ç", "ø", "ł", "з", "α", "ש",
+        "ب", "क", "ก", "日", "本", "語", "한", "글", "ß", "ř"
+    };
+    private final int keys;
+    private final int locales;
+    private final long seed;
+
+    /**
+     * @param keys the number of keys in the base bundles
+     * @param locales the number of locales, at most {@link #MAX_LOCALES}
+     * @param seed picks the values
+     */
+    public SyntheticBundles(int keys, int locales, long seed) {
+        if (keys < 1 || locales < 0 || locales > MAX_LOCALES) {
+            throw new IllegalArgumentException("Cannot generate " + keys + " keys in " + locales + " locales");
+        }
+        this.keys = keys;
+        this.locales = locales;
+        this.seed = seed;
+    }
+
+    public int getKeyCount() {
+        return keys;
+    }
+
+    /**
+     * @return the language codes of the locales, in a fixed order
+     */
+    public List<String> getLanguageCodes() {
+        return Collections.unmodifiableList(Arrays.asList(LOCALES).subList(0, locales));
+    }
+
+    public int getBundleCount() {
+        return (keys + KEYS_PER_BUNDLE - 1) / KEYS_PER_BUNDLE;
+    }
+
+    /**
+     * @return the path of a base bundle, relative to the bundle directory
+     */
+    public String getBundlePath(int bundle) {
+        return "module" + bundle / BUNDLES_PER_DIRECTORY + "/messages" + bundle + ".properties";
+    }
+
+    /**
+     * @return a file set matching the base bundles written to {@code dir},
+     * the way the pull goal is configured
+     */
+    public static FileSet fileSet(File dir) {
+        FileSet fileSet = new FileSet();
+        fileSet.setDirectory(dir.getPath());
+        fileSet.addInclude("**/*.properties");
+        fileSet.addExclude("**/*_*.properties");
+        return fileSet;
+    }
+
+    /**
+     * Writes the base bundles and their locale files under {@code dir}.
+     *
+     * @param translated the fraction of keys each locale file has a value
+     * for, the others are left for translation
+     */
+    public void writeBundles(File dir, double translated) throws IOException {
+        for (int bundle = 0; bundle < getBundleCount(); bundle++) {
+            File base = new File(dir, getBundlePath(bundle));
+            base.getParentFile().mkdirs();
+            Writer out = open(base);
+            try {
+                for (int key = first(bundle); key < end(bundle); key++) {
+                    out.write(key(key) + "=" + escape(value(key)) + "\n");
+                }
+            } finally {
+                out.close();
+            }
+            for (int locale = 0; locale < locales; locale++) {
+                String path = base.getPath();
+                out = open(new File(path.substring(0, path.length() - ".properties".length())
+                        + "_" + LOCALES[locale] + ".properties"));
+                try {
+                    for (int key = first(bundle); key < end(bundle); key++) {
+                        if (isTranslated(key, locale, translated)) {
+                            out.write(key(key) + "=" + escape(translation(key, locale)) + "\n");
+                        }
+                    }
+                } finally {
+                    out.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the file the pull goal would make of the bundles, the input of
+     * the translate and generate goals.
+     *
+     * @param translated the fraction of keys that have a translation in each
+     * locale, the others are empty
+     */
+    public void writePullFile(File file, double translated) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        parent.mkdirs();
+        Writer out = open(file);
+        try {
+            for (int bundle = 0; bundle < getBundleCount(); bundle++) {
+                out.write("#" + getBundlePath(bundle) + "\r\n");
+                for (int key = first(bundle); key < end(bundle); key++) {
+                    out.write(key(key) + "=" + value(key) + "\r\n");
+                    for (int locale = 0; locale < locales; locale++) {
+                        out.write(key(key) + "." + LOCALES[locale] + "="
+                                + (isTranslated(key, locale, translated) ? translation(key, locale) : "") + "\r\n");
+                    }
+                    out.write("\r\n");
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @return {@code count} distinct source texts, as sent for translation
+     */
+    public List<String> texts(int count) {
+        List<String> texts = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            texts.add(value(i));
+        }
+        return texts;
+    }
+
+    private int first(int bundle) {
+        return bundle * KEYS_PER_BUNDLE;
+    }
+
+    private int end(int bundle) {
+        return Math.min(keys, first(bundle) + KEYS_PER_BUNDLE);
+    }
+
+    private static String key(int key) {
+        return "label." + (key % 7 == 0 ? "error." : "") + "k" + key;
+    }
+
+    private Random random(int key, int locale) {
+        return new Random(seed * 31 + key * 61L + locale);
+    }
+
+    private String value(int key) {
+        Random random = random(key, -1);
+        StringBuilder sb = new StringBuilder();
+        int words = 3 + random.nextInt(10);
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        //a few percent of strings are repeated across bundles, like "Cancel" or "Save"
+        if (random.nextInt(20) == 0) {
+            return WORDS[key % WORDS.length];
+        }
+        switch (random.nextInt(8)) {
+            case 0:
+                sb.append(" \"{0}\"");
+                break;
+            case 1:
+                sb.append(" & ").append(WORDS[random.nextInt(WORDS.length)]);
+                break;
+            case 2:
+                sb.insert(0, "'").append('\'');
+                break;
+            default:
+                break;
+        }
+        return sb.toString();
+    }
+
+    private String translation(int key, int locale) {
+        Random random = random(key, locale);
+        String value = value(key);
+        StringBuilder sb = new StringBuilder(value.length() + 8);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != ' ' && random.nextInt(6) == 0) {
+                sb.append(ACCENTS[(locale + random.nextInt(4)) % ACCENTS.length]);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private boolean isTranslated(int key, int locale, double translated) {
+        return random(key, locale).nextDouble() < translated;
+    }
+
+    private static String escape(String value) {
+        //locale files are read as ISO-8859-1 by java.util.Properties
+        return GoogleTranslateMojo.nativeToAscii(value);
+    }
+
+    private static Writer open(File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), UTF8));
+    }
+}
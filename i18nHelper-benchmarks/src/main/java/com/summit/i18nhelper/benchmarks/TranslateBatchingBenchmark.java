@@ -0,0 +1,160 @@
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.summit.i18nhelper.benchmarks;
+
+import com.google.api.GoogleAPI;
+import com.google.api.GoogleAPIException;
+import com.google.api.UrlConnectionTransport;
+import com.google.api.translate.Language;
+import com.google.api.translate.TranslateV2;
+import com.summit.i18nhelper.GoogleTranslateMojo;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The translation path against a {@link StubTranslateServer}: the
+ * {@link TranslateV2} client splitting texts into batched requests, and the
+ * translate goal translating a whole pull file of {@link SyntheticBundles}.
+ *
+ * {@code latency} is the time the stub takes to answer each request, with
+ * a few milliseconds the goal is bound by round trips, which is where
+ * {@code workers}, {@code batchSize} and {@code executionMode} matter.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class TranslateBatchingBenchmark {
+
+    /**
+     * A client sending to the stub.
+     */
+    @State(Scope.Benchmark)
+    public static class Client {
+
+        @Param({"50", "1000"})
+        public int texts;
+        @Param({"0"})
+        public long latency;
+        private StubTranslateServer server;
+        private TranslateV2 translate;
+        private String[] values;
+
+        @Setup
+        public void setUp() throws IOException {
+            server = new StubTranslateServer(latency);
+            GoogleAPI.setHttpReferrer("http://localhost/");
+            GoogleAPI.setKey("benchmark");
+            GoogleAPI.setTransport(new UrlConnectionTransport());
+            translate = new TranslateV2(server.getEndpoint().toString());
+            values = new SyntheticBundles(texts, 0, 42).texts(texts).toArray(new String[texts]);
+        }
+
+        @TearDown
+        public void tearDown() {
+            server.close();
+        }
+    }
+
+    /**
+     * A pull file with nothing translated yet.
+     */
+    @State(Scope.Benchmark)
+    public static class Goal {
+
+        @Param({"1000"})
+        public int keys;
+        @Param({"2"})
+        public int locales;
+        @Param({"1", "8"})
+        public int workers;
+        @Param({"1", "50"})
+        public int batchSize;
+        @Param({"0", "5"})
+        public long latency;
+        @Param({"threads", "virtual", "async"})
+        public String executionMode;
+        private StubTranslateServer server;
+        private SyntheticBundles bundles;
+        private File dir;
+        private File pullFile;
+
+        @Setup
+        public void setUp() throws IOException {
+            server = new StubTranslateServer(latency);
+            bundles = new SyntheticBundles(keys, locales, 42);
+            dir = Mojos.createTempDirectory("i18nHelper-translate");
+            pullFile = new File(dir, "pull.properties");
+            bundles.writePullFile(pullFile, 0);
+        }
+
+        @TearDown
+        public void tearDown() {
+            server.close();
+            Mojos.delete(dir);
+        }
+    }
+
+    @Benchmark
+    public String[] client(Client client) throws GoogleAPIException {
+        return client.translate.execute(client.values, Language.ENGLISH, Language.FRENCH);
+    }
+
+    @Benchmark
+    public File goal(Goal goal) throws IOException, MojoExecutionException, MojoFailureException {
+        GoogleTranslateMojo mojo = new GoogleTranslateMojo();
+        mojo.setLog(new QuietLog());
+        Mojos.set(mojo, "outputDirectory", goal.dir);
+        Mojos.set(mojo, "outputFileName", "translated.properties");
+        Mojos.set(mojo, "fileToTranslate", goal.pullFile);
+        Mojos.set(mojo, "defaultLocale", "en");
+        Mojos.set(mojo, "languageCodes", new ArrayList<String>(goal.bundles.getLanguageCodes()));
+        Mojos.set(mojo, "googleApiKey", "benchmark");
+        Mojos.set(mojo, "httpReferrer", new URL("http://localhost/"));
+        Mojos.set(mojo, "endpoint", goal.server.getEndpoint());
+        Mojos.set(mojo, "workers", goal.workers);
+        Mojos.set(mojo, "maxConnections", goal.workers);
+        Mojos.set(mojo, "connectTimeout", 10000);
+        Mojos.set(mojo, "readTimeout", 30000);
+        //nothing in the way of the requests: no rate limit, retries or memory
+        Mojos.set(mojo, "requestsPerSecond", 0d);
+        Mojos.set(mojo, "maxRetries", 0);
+        Mojos.set(mojo, "batchSize", goal.batchSize);
+        Mojos.set(mojo, "executionMode", goal.executionMode);
+        Mojos.set(mojo, "journalFile", new File(goal.dir, "translate.journal"));
+        Mojos.set(mojo, "sourcesFile", new File(goal.dir, "translation-sources.dat"));
+        mojo.execute();
+        return new File(goal.dir, "translated.properties");
+    }
+}
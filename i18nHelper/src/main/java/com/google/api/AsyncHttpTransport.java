@@ -0,0 +1,46 @@
+/**
+ * AsyncHttpTransport.java
+ *
+ * This file is part of google-api-translate-java.
+ *
+ * google-api-translate-java is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * google-api-translate-java is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with google-api-translate-java. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.google.api;
+
+import java.net.URL;
+import java.util.Map;
+
+/**
+ * Sends HTTP requests without waiting for their responses, so a few threads
+ * can keep many requests in flight.
+ * 
+ * Implementations must be safe for use by several threads at once.
+ * 
+ * @see GoogleAPI#setAsyncTransport(AsyncHttpTransport)
+ */
+public interface AsyncHttpTransport {
+
+	/**
+	 * Starts sending a request.
+	 * 
+	 * @param method The HTTP method, GET or POST.
+	 * @param url The URL to send the request to.
+	 * @param headers Request headers, may be empty.
+	 * @param body The request body, or null for none.
+	 * @return A future completed with the body of a successful response, or failed
+	 * with an {@link HttpStatusException} if the server answers with anything but a
+	 * 2xx status, or another IOException.
+	 */
+	CallbackFuture<String> send(String method, URL url, Map<String, String> headers, String body);
+}
@@ -0,0 +1,40 @@
+/**
+ * Callback.java
+ *
+ * This file is part of google-api-translate-java.
+ *
+ * google-api-translate-java is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * google-api-translate-java is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with google-api-translate-java. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.google.api;
+
+/**
+ * Receives the outcome of an asynchronous operation.
+ * 
+ * @param <T> The type of the result.
+ * @see CallbackFuture#addCallback(Callback)
+ */
+public interface Callback<T> {
+
+	/**
+	 * Called when the operation succeeded.
+	 * @param result The result.
+	 */
+	void completed(T result);
+
+	/**
+	 * Called when the operation failed or was cancelled.
+	 * @param ex The failure.
+	 */
+	void failed(Exception ex);
+}
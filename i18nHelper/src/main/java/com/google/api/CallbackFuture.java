@@ -0,0 +1,182 @@
+/**
+ * CallbackFuture.java
+ *
+ * This file is part of google-api-translate-java.
+ *
+ * google-api-translate-java is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * google-api-translate-java is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with google-api-translate-java. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.google.api;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A {@link Future} completed by whoever produces its result, which notifies
+ * {@link Callback}s instead of making them wait.
+ * 
+ * Callbacks run on the thread that completes the future, or right away on the
+ * thread adding them if it is already done. They must not block: futures of
+ * the asynchronous transports are completed by their I/O thread. A callback
+ * that throws is reported to the thread's uncaught exception handler and
+ * doesn't keep the others from running.
+ * 
+ * @param <T> The type of the result.
+ */
+public class CallbackFuture<T> implements Future<T> {
+
+	private T result;
+	private Exception failure;
+	private boolean done;
+	private List<Callback<? super T>> callbacks = new ArrayList<Callback<? super T>>(1);
+
+	/**
+	 * Completes the future with a result.
+	 * @param value The result.
+	 * @return false if the future was already done.
+	 */
+	public boolean complete(final T value) {
+		final List<Callback<? super T>> toRun;
+		synchronized (this) {
+			if (done) {
+				return false;
+			}
+			result = value;
+			done = true;
+			toRun = callbacks;
+			callbacks = null;
+			notifyAll();
+		}
+		for (final Callback<? super T> callback : toRun) {
+			notifyCompleted(callback, value);
+		}
+		return true;
+	}
+
+	/**
+	 * Completes the future with a failure.
+	 * @param ex The failure.
+	 * @return false if the future was already done.
+	 */
+	public boolean fail(final Exception ex) {
+		final List<Callback<? super T>> toRun;
+		synchronized (this) {
+			if (done) {
+				return false;
+			}
+			failure = ex;
+			done = true;
+			toRun = callbacks;
+			callbacks = null;
+			notifyAll();
+		}
+		for (final Callback<? super T> callback : toRun) {
+			notifyFailed(callback, ex);
+		}
+		return true;
+	}
+
+	/**
+	 * Calls back when the future is done, right away if it already is.
+	 * @param callback The callback.
+	 */
+	public void addCallback(final Callback<? super T> callback) {
+		synchronized (this) {
+			if (!done) {
+				callbacks.add(callback);
+				return;
+			}
+		}
+		if (failure == null) {
+			notifyCompleted(callback, result);
+		} else {
+			notifyFailed(callback, failure);
+		}
+	}
+
+	/**
+	 * Fails the future with a {@link CancellationException}. The work producing
+	 * the result is not interrupted, its result is ignored.
+	 */
+	@Override
+	public boolean cancel(final boolean mayInterruptIfRunning) {
+		return fail(new CancellationException());
+	}
+
+	@Override
+	public synchronized boolean isCancelled() {
+		return failure instanceof CancellationException;
+	}
+
+	@Override
+	public synchronized boolean isDone() {
+		return done;
+	}
+
+	@Override
+	public synchronized T get() throws InterruptedException, ExecutionException {
+		while (!done) {
+			wait();
+		}
+		return report();
+	}
+
+	@Override
+	public synchronized T get(final long timeout, final TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		final long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while (!done) {
+			final long remaining = deadline - System.nanoTime();
+			if (remaining <= 0) {
+				throw new TimeoutException();
+			}
+			TimeUnit.NANOSECONDS.timedWait(this, remaining);
+		}
+		return report();
+	}
+
+	private T report() throws ExecutionException {
+		if (failure instanceof CancellationException) {
+			throw (CancellationException) failure;
+		}
+		if (failure != null) {
+			throw new ExecutionException(failure);
+		}
+		return result;
+	}
+
+	private static <T> void notifyCompleted(final Callback<? super T> callback, final T value) {
+		try {
+			callback.completed(value);
+		} catch (RuntimeException ex) {
+			uncaught(ex);
+		}
+	}
+
+	private static <T> void notifyFailed(final Callback<? super T> callback, final Exception ex) {
+		try {
+			callback.failed(ex);
+		} catch (RuntimeException rex) {
+			uncaught(rex);
+		}
+	}
+
+	private static void uncaught(final RuntimeException ex) {
+		final Thread thread = Thread.currentThread();
+		thread.getUncaughtExceptionHandler().uncaughtException(thread, ex);
+	}
+}
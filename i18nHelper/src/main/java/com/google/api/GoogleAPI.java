@@ -20,12 +20,9 @@
  */
 package com.google.api;
 
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.json.JSONObject;
 
@@ -49,6 +46,16 @@ public abstract class GoogleAPI {
      */
     protected static String referrer, key;
     
+    /**
+     * Sends the requests.
+     */
+    private static volatile HttpTransport transport = new UrlConnectionTransport();
+    
+    /**
+     * Sends the requests of asynchronous calls, null until one is set.
+     */
+    private static volatile AsyncHttpTransport asyncTransport;
+    
     /**
      * Sets the HTTP Referrer.
      * @param pReferrer The HTTP referrer parameter.
@@ -71,6 +78,41 @@ public abstract class GoogleAPI {
     	}
     }
 
+    /**
+     * Sets the transport used to send requests.
+     * @param pTransport The transport to use.
+     */
+    public static void setTransport(final HttpTransport pTransport) {
+    	if (pTransport == null) {
+    		throw new IllegalArgumentException("Transport cannot be null.");
+    	}
+    	transport = pTransport;
+    }
+    
+    /**
+     * Returns the transport used to send requests.
+     * @return The current transport.
+     */
+    public static HttpTransport getTransport() {
+    	return transport;
+    }
+
+    /**
+     * Sets the transport used to send the requests of asynchronous calls.
+     * @param pTransport The transport to use, or null to send them with the blocking transport.
+     */
+    public static void setAsyncTransport(final AsyncHttpTransport pTransport) {
+    	asyncTransport = pTransport;
+    }
+    
+    /**
+     * Returns the transport used to send the requests of asynchronous calls.
+     * @return The current transport, or null if they are sent with the blocking transport.
+     */
+    public static AsyncHttpTransport getAsyncTransport() {
+    	return asyncTransport;
+    }
+
     /**
      * Forms an HTTP request, sends it using GET method and returns the result of the request as a JSONObject.
      * 
@@ -80,21 +122,7 @@ public abstract class GoogleAPI {
      */
     protected static JSONObject retrieveJSON(final URL url) throws Exception {
     	try {
-    		final HttpURLConnection uc = (HttpURLConnection) url.openConnection();
-    		uc.setRequestProperty("referer", referrer);
-    		uc.setRequestMethod("GET");
-    		uc.setDoOutput(true);
-    		
-    		try {
-    			final String result = inputStreamToString(uc.getInputStream());
-    			
-    			return new JSONObject(result);
-    		} finally { // http://java.sun.com/j2se/1.5.0/docs/guide/net/http-keepalive.html
-    			uc.getInputStream().close();
-    			if (uc.getErrorStream() != null) {
-    				uc.getErrorStream().close();
-    			}
-    		}
+    		return new JSONObject(transport.execute("GET", url, headers(null), null));
     	} catch (Exception ex) {
     		throw new Exception("[google-api-translate-java] Error retrieving translation.", ex);
     	}
@@ -109,59 +137,87 @@ public abstract class GoogleAPI {
      * @throws Exception on error.
      */
     protected static JSONObject retrieveJSON(final URL url, final String parameters) throws Exception {
+    	return retrieveJSON(url, parameters, null);
+    }
+    
+    /**
+     * Forms an HTTP request, sends it using POST method and returns the result of the request as a JSONObject.
+     * 
+     * @param url The URL to query for a JSONObject.
+     * @param parameters Additional POST parameters
+     * @param methodOverride The method the server should treat the request as (sent as X-HTTP-Method-Override), or null.
+     * @return The translated String.
+     * @throws Exception on error.
+     */
+    protected static JSONObject retrieveJSON(final URL url, final String parameters, final String methodOverride) throws Exception {
     	try {
-    		final HttpURLConnection uc = (HttpURLConnection) url.openConnection();
-    		uc.setRequestProperty("referer", referrer);
-    		uc.setRequestMethod("POST");
-    		uc.setDoOutput(true);
-
-			final PrintWriter pw = new PrintWriter(uc.getOutputStream());
-			pw.write(parameters);
-			pw.close();
-			uc.getOutputStream().close();
-    		
-    		try {
-    			final String result = inputStreamToString(uc.getInputStream());
-    			
-    			return new JSONObject(result);
-    		} finally { // http://java.sun.com/j2se/1.5.0/docs/guide/net/http-keepalive.html
-    			if (uc.getInputStream() != null) {
-    				uc.getInputStream().close();
-    			}
-    			if (uc.getErrorStream() != null) {
-    				uc.getErrorStream().close();
-    			}
-    			if (pw != null) {
-    				pw.close();
-    			}
+    		final Map<String, String> headers = headers("application/x-www-form-urlencoded; charset=" +ENCODING);
+    		if (methodOverride != null) {
+    			headers.put("X-HTTP-Method-Override", methodOverride);
     		}
+    		return new JSONObject(transport.execute("POST", url, headers, parameters));
     	} catch (Exception ex) {
     		throw new Exception("[google-api-translate-java] Error retrieving translation.", ex);
     	}
     }
     
     /**
-     * Reads an InputStream and returns its contents as a String.
-     * Also effects rate control.
-     * @param inputStream The InputStream to read from.
-     * @return The contents of the InputStream as a String.
-     * @throws Exception on error.
+     * Forms an HTTP request, starts sending it using POST method and returns the future result as a JSONObject.
+     * 
+     * Without an asynchronous transport the request is sent right away with the blocking one.
+     * 
+     * @param url The URL to query for a JSONObject.
+     * @param parameters Additional POST parameters
+     * @param methodOverride The method the server should treat the request as (sent as X-HTTP-Method-Override), or null.
+     * @return The future result, failed with an Exception wrapping the cause on error.
      */
-    private static String inputStreamToString(final InputStream inputStream) throws Exception {
-    	final StringBuilder outputBuilder = new StringBuilder();
-    	
-    	try {
-    		String string;
-    		if (inputStream != null) {
-    			BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, ENCODING));
-    			while (null != (string = reader.readLine())) {
-    				outputBuilder.append(string).append('\n');
+    protected static CallbackFuture<JSONObject> retrieveJSONAsync(final URL url, final String parameters, final String methodOverride) {
+    	final CallbackFuture<JSONObject> json = new CallbackFuture<JSONObject>();
+    	final AsyncHttpTransport async = asyncTransport;
+    	if (async == null) {
+    		try {
+    			json.complete(retrieveJSON(url, parameters, methodOverride));
+    		} catch (Exception ex) {
+    			json.fail(ex);
+    		}
+    		return json;
+    	}
+    	final Map<String, String> headers = headers("application/x-www-form-urlencoded; charset=" +ENCODING);
+    	if (methodOverride != null) {
+    		headers.put("X-HTTP-Method-Override", methodOverride);
+    	}
+    	async.send("POST", url, headers, parameters).addCallback(new Callback<String>() {
+    		
+    		@Override
+    		public void completed(final String body) {
+    			try {
+    				json.complete(new JSONObject(body));
+    			} catch (Exception ex) {
+    				failed(ex);
     			}
     		}
-    	} catch (Exception ex) {
-    		throw new Exception("[google-api-translate-java] Error reading translation stream.", ex);
+    		
+    		@Override
+    		public void failed(final Exception ex) {
+    			json.fail(new Exception("[google-api-translate-java] Error retrieving translation.", ex));
+    		}
+    	});
+    	return json;
+    }
+    
+    /**
+     * Returns the headers sent with every request.
+     * @param contentType The content type of the request body, or null.
+     * @return A modifiable map of headers.
+     */
+    private static Map<String, String> headers(final String contentType) {
+    	final Map<String, String> headers = new LinkedHashMap<String, String>();
+    	if (referrer != null) {
+    		headers.put("referer", referrer);
+    	}
+    	if (contentType != null) {
+    		headers.put("Content-Type", contentType);
     	}
-    	
-    	return outputBuilder.toString();
+    	return headers;
     }
 }
\ No newline at end of file
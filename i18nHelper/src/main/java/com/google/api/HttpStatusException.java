@@ -0,0 +1,70 @@
+/**
+ * HttpStatusException.java
+ *
+ * This file is part of google-api-translate-java.
+ *
+ * google-api-translate-java is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * google-api-translate-java is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with google-api-translate-java. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.google.api;
+
+import java.io.IOException;
+
+/**
+ * Thrown by an {@link HttpTransport} when the server answers with an error status.
+ */
+public class HttpStatusException extends IOException {
+
+	/**
+	 * Serial version UID.
+	 */
+	private static final long serialVersionUID = -2383545781263150283L;
+	
+	private final int statusCode;
+	private final String body;
+	
+	public HttpStatusException(final int statusCode, final String message, final String body) {
+		super("HTTP " +statusCode +(message != null ? " " +message : ""));
+		this.statusCode = statusCode;
+		this.body = body;
+	}
+	
+	/**
+	 * @return The HTTP status code.
+	 */
+	public int getStatusCode() {
+		return statusCode;
+	}
+	
+	/**
+	 * @return The body of the error response, or an empty String.
+	 */
+	public String getBody() {
+		return body;
+	}
+	
+	/**
+	 * Looks for an HttpStatusException in the causes of the given exception.
+	 * 
+	 * @param t The exception to search.
+	 * @return The first HttpStatusException found, or null.
+	 */
+	public static HttpStatusException find(final Throwable t) {
+		for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+			if (cause instanceof HttpStatusException) {
+				return (HttpStatusException) cause;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,46 @@
+/**
+ * HttpTransport.java
+ *
+ * This file is part of google-api-translate-java.
+ *
+ * google-api-translate-java is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * google-api-translate-java is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with google-api-translate-java. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.google.api;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Map;
+
+/**
+ * Sends the HTTP requests made by {@link GoogleAPI}.
+ * 
+ * Implementations must be safe for use by several threads at once.
+ * 
+ * @see GoogleAPI#setTransport(HttpTransport)
+ */
+public interface HttpTransport {
+
+	/**
+	 * Sends a request and returns the body of a successful response.
+	 * 
+	 * @param method The HTTP method, GET or POST.
+	 * @param url The URL to send the request to.
+	 * @param headers Request headers, may be empty.
+	 * @param body The request body, or null for none.
+	 * @return The response body.
+	 * @throws HttpStatusException if the server answers with anything but a 2xx status.
+	 * @throws IOException on other errors.
+	 */
+	String execute(String method, URL url, Map<String, String> headers, String body) throws IOException;
+}
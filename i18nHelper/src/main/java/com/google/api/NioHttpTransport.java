@@ -0,0 +1,832 @@
+/**
+ * NioHttpTransport.java
+ *
+ * This file is part of google-api-translate-java.
+ *
+ * google-api-translate-java is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * google-api-translate-java is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with google-api-translate-java. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.google.api;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLParameters;
+
+/**
+ * {@link AsyncHttpTransport} sending requests over non-blocking sockets, all of
+ * them served by a single I/O thread.
+ * 
+ * Connections are kept alive and reused, at most <code>maxConnections</code>
+ * per host are opened and further requests wait for one to be free. A request
+ * that finds its kept alive connection closed by the server is sent again once
+ * on a new connection. HTTPS uses the default SSLContext and verifies the host
+ * name, which needs Java 7 or later. Proxies are not supported.
+ * 
+ * Futures are completed on the I/O thread, their callbacks must not block.
+ */
+public class NioHttpTransport implements AsyncHttpTransport, Closeable {
+
+	private static final Charset ASCII = Charset.forName("US-ASCII");
+	private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+	private final int maxConnections;
+	private final long connectTimeoutNanos;
+	private final long readTimeoutNanos;
+	private final Selector selector;
+	private final Thread thread;
+	private final Queue<Exchange> submitted = new ConcurrentLinkedQueue<Exchange>();
+	private volatile boolean closed;
+	/**
+	 * Only used by the I/O thread.
+	 */
+	private final Map<String, Host> hosts = new HashMap<String, Host>();
+	private final Set<Connection> connections = new HashSet<Connection>();
+
+	/**
+	 * Starts the I/O thread.
+	 * 
+	 * @param maxConnections The maximum number of connections open at once to each host.
+	 * @param connectTimeout The connect timeout in milliseconds, 0 for none.
+	 * @param readTimeout The longest wait for data from the server in milliseconds, 0 for none.
+	 * @throws IOException if the selector cannot be opened.
+	 */
+	public NioHttpTransport(final int maxConnections, final int connectTimeout, final int readTimeout) throws IOException {
+		if (maxConnections < 1) {
+			throw new IllegalArgumentException("maxConnections must be at least 1.");
+		}
+		this.maxConnections = maxConnections;
+		this.connectTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(connectTimeout);
+		this.readTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(readTimeout);
+		this.selector = Selector.open();
+		this.thread = new Thread(new Runnable() {
+			
+			@Override
+			public void run() {
+				loop();
+			}
+		}, "i18nHelper-nio-http");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public CallbackFuture<String> send(final String method, final URL url, final Map<String, String> headers, final String body) {
+		final Exchange exchange;
+		try {
+			exchange = new Exchange(method, url, headers, body);
+		} catch (IOException ex) {
+			final CallbackFuture<String> failed = new CallbackFuture<String>();
+			failed.fail(ex);
+			return failed;
+		}
+		submitted.add(exchange);
+		if (closed) {
+			failSubmitted();
+		} else {
+			selector.wakeup();
+		}
+		return exchange.future;
+	}
+
+	/**
+	 * Stops the I/O thread, requests still waiting or in flight fail.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		selector.wakeup();
+		if (Thread.currentThread() != thread) {
+			try {
+				thread.join();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private void loop() {
+		try {
+			while (!closed) {
+				selector.select(nextTimeoutMillis());
+				for (Exchange exchange = submitted.poll(); exchange != null; exchange = submitted.poll()) {
+					final Host host = host(exchange.url);
+					host.waiting.add(exchange);
+					host.dispatch();
+				}
+				final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					final SelectionKey key = keys.next();
+					keys.remove();
+					if (key.isValid()) {
+						((Connection) key.attachment()).process();
+					}
+				}
+				expire();
+			}
+		} catch (IOException ex) {
+			// the selector failed, nothing can be sent anymore
+		} finally {
+			closed = true;
+			final IOException failure = new IOException("The transport is closed.");
+			for (final Connection connection : new ArrayList<Connection>(connections)) {
+				connection.fail(failure, false);
+			}
+			for (final Host host : hosts.values()) {
+				for (final Exchange exchange : host.waiting) {
+					exchange.future.fail(failure);
+				}
+				host.waiting.clear();
+			}
+			failSubmitted();
+			try {
+				selector.close();
+			} catch (IOException ex) {
+				// nothing left to do with it
+			}
+		}
+	}
+
+	private void failSubmitted() {
+		for (Exchange exchange = submitted.poll(); exchange != null; exchange = submitted.poll()) {
+			exchange.future.fail(new IOException("The transport is closed."));
+		}
+	}
+
+	private Host host(final URL url) {
+		final boolean secure = "https".equals(url.getProtocol());
+		final int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+		final String name = url.getProtocol() + "://" + url.getHost() + ":" + port;
+		Host host = hosts.get(name);
+		if (host == null) {
+			host = new Host(url.getHost(), port, secure);
+			hosts.put(name, host);
+		}
+		return host;
+	}
+
+	/**
+	 * @return how long the selector may wait before a timeout is due, 0 for ever.
+	 */
+	private long nextTimeoutMillis() {
+		long next = Long.MAX_VALUE;
+		final long now = System.nanoTime();
+		for (final Connection connection : connections) {
+			if (connection.deadline != 0) {
+				next = Math.min(next, connection.deadline - now);
+			}
+		}
+		if (next == Long.MAX_VALUE) {
+			return 0;
+		}
+		return Math.max(1, TimeUnit.NANOSECONDS.toMillis(next) + 1);
+	}
+
+	private void expire() {
+		final long now = System.nanoTime();
+		for (final Connection connection : new ArrayList<Connection>(connections)) {
+			if (connection.deadline != 0 && now - connection.deadline >= 0) {
+				connection.fail(new SocketTimeoutException(connection.connected ? "Read timed out" : "connect timed out"), false);
+				// the freed slot goes to a waiting request, nothing else may wake the selector
+				connection.host.dispatch();
+			}
+		}
+	}
+
+	/**
+	 * The connections to one host and the requests waiting for one.
+	 */
+	private final class Host {
+
+		private final String name;
+		private final int port;
+		private final boolean secure;
+		private final LinkedList<Connection> idle = new LinkedList<Connection>();
+		private final LinkedList<Exchange> waiting = new LinkedList<Exchange>();
+		private int open;
+
+		Host(final String name, final int port, final boolean secure) {
+			this.name = name;
+			this.port = port;
+			this.secure = secure;
+		}
+
+		/**
+		 * Starts waiting requests on idle connections, opening new ones up to the limit.
+		 */
+		void dispatch() {
+			while (!waiting.isEmpty()) {
+				Connection connection = idle.poll();
+				if (connection == null) {
+					if (open >= maxConnections) {
+						return;
+					}
+					try {
+						connection = new Connection(this);
+					} catch (IOException ex) {
+						waiting.poll().future.fail(ex);
+						continue;
+					} catch (RuntimeException ex) {
+						// unresolved or unsupported addresses
+						waiting.poll().future.fail(new IOException(ex.toString()));
+						continue;
+					}
+				}
+				connection.start(waiting.poll());
+			}
+		}
+	}
+
+	/**
+	 * A connection, sending one request at a time.
+	 */
+	private final class Connection {
+
+		private final Host host;
+		private final SocketChannel channel;
+		private final SelectionKey key;
+		private final SSLEngine ssl;
+		private ByteBuffer netIn;
+		private ByteBuffer netOut;
+		private ByteBuffer appIn;
+		private boolean connected;
+		private boolean open = true;
+		/**
+		 * Whether a request was sent on it before, the server may have closed it meanwhile.
+		 */
+		private boolean reused;
+		private Exchange exchange;
+		private ByteBuffer request;
+		private Response response;
+		/**
+		 * When the pending connect or read times out, from System.nanoTime(), 0 for never.
+		 */
+		private long deadline;
+
+		Connection(final Host host) throws IOException {
+			this.host = host;
+			final InetSocketAddress address = new InetSocketAddress(host.name, host.port);
+			if (address.isUnresolved()) {
+				throw new UnknownHostException(host.name);
+			}
+			ssl = host.secure ? createEngine(host.name, host.port) : null;
+			channel = SocketChannel.open();
+			try {
+				channel.configureBlocking(false);
+				channel.socket().setTcpNoDelay(true);
+				connected = channel.connect(address);
+				key = channel.register(selector, connected ? 0 : SelectionKey.OP_CONNECT, this);
+			} catch (IOException ex) {
+				channel.close();
+				throw ex;
+			}
+			if (ssl != null) {
+				netIn = ByteBuffer.allocate(ssl.getSession().getPacketBufferSize());
+				netOut = ByteBuffer.allocate(ssl.getSession().getPacketBufferSize());
+				netOut.flip();
+				appIn = ByteBuffer.allocate(ssl.getSession().getApplicationBufferSize());
+			} else {
+				appIn = ByteBuffer.allocate(16 * 1024);
+			}
+			connections.add(this);
+			host.open++;
+			deadline = connected ? 0 : deadline(connectTimeoutNanos);
+		}
+
+		void start(final Exchange next) {
+			exchange = next;
+			request = next.request.duplicate();
+			response = new Response("HEAD".equals(next.method));
+			if (connected) {
+				deadline = deadline(readTimeoutNanos);
+				process();
+			}
+		}
+
+		/**
+		 * Makes whatever progress the socket allows.
+		 */
+		void process() {
+			try {
+				if (!connected) {
+					if (!channel.finishConnect()) {
+						return;
+					}
+					connected = true;
+					deadline = exchange == null ? 0 : deadline(readTimeoutNanos);
+					if (ssl != null) {
+						ssl.beginHandshake();
+					}
+				}
+				if (exchange == null) {
+					// an idle connection only becomes readable when the server closes it
+					close();
+				} else if (ssl == null) {
+					pumpPlain();
+				} else {
+					pumpTls();
+				}
+			} catch (IOException ex) {
+				fail(ex, true);
+			} catch (RuntimeException ex) {
+				fail(new IOException(ex.toString()), false);
+			}
+			host.dispatch();
+		}
+
+		private void pumpPlain() throws IOException {
+			if (request.hasRemaining()) {
+				channel.write(request);
+				if (request.hasRemaining()) {
+					key.interestOps(SelectionKey.OP_WRITE);
+					return;
+				}
+			}
+			while (exchange != null) {
+				final int n = channel.read(appIn);
+				if (n < 0) {
+					endOfStream();
+					return;
+				}
+				if (n == 0) {
+					key.interestOps(SelectionKey.OP_READ);
+					return;
+				}
+				received();
+			}
+		}
+
+		private void pumpTls() throws IOException {
+			while (exchange != null) {
+				if (netOut.hasRemaining()) {
+					channel.write(netOut);
+					if (netOut.hasRemaining()) {
+						key.interestOps(SelectionKey.OP_WRITE);
+						return;
+					}
+				}
+				final SSLEngineResult.HandshakeStatus handshake = ssl.getHandshakeStatus();
+				if (handshake == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+					for (Runnable task = ssl.getDelegatedTask(); task != null; task = ssl.getDelegatedTask()) {
+						task.run();
+					}
+				} else if (handshake == SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+					wrap(EMPTY);
+				} else if (handshake == SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING && request.hasRemaining()) {
+					wrap(request);
+				} else if (!unwrap()) {
+					key.interestOps(SelectionKey.OP_READ);
+					return;
+				}
+			}
+		}
+
+		private void wrap(final ByteBuffer source) throws IOException {
+			netOut.clear();
+			SSLEngineResult result = ssl.wrap(source, netOut);
+			while (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+				netOut = ByteBuffer.allocate(netOut.capacity() * 2);
+				result = ssl.wrap(source, netOut);
+			}
+			netOut.flip();
+			if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+				throw new SSLException("The TLS connection to " + host.name + " was closed.");
+			}
+		}
+
+		/**
+		 * Decrypts what was received, reading from the socket when more is needed.
+		 * 
+		 * @return false if nothing can be done until the socket is readable.
+		 */
+		private boolean unwrap() throws IOException {
+			netIn.flip();
+			final SSLEngineResult result;
+			try {
+				result = ssl.unwrap(netIn, appIn);
+			} finally {
+				netIn.compact();
+			}
+			switch (result.getStatus()) {
+			case BUFFER_OVERFLOW:
+				appIn = enlarge(appIn, ssl.getSession().getApplicationBufferSize());
+				return true;
+			case BUFFER_UNDERFLOW:
+				if (!netIn.hasRemaining()) {
+					netIn = enlarge(netIn, ssl.getSession().getPacketBufferSize());
+				}
+				final int n = channel.read(netIn);
+				if (n < 0) {
+					endOfStream();
+					return true;
+				}
+				if (n == 0) {
+					return false;
+				}
+				deadline = deadline(readTimeoutNanos);
+				return true;
+			case CLOSED:
+				endOfStream();
+				return true;
+			default:
+				if (appIn.position() > 0) {
+					received();
+				}
+				return true;
+			}
+		}
+
+		/**
+		 * Parses the bytes in appIn.
+		 */
+		private void received() throws IOException {
+			deadline = deadline(readTimeoutNanos);
+			appIn.flip();
+			final boolean complete = response.feed(appIn);
+			appIn.clear();
+			if (complete) {
+				finish();
+			}
+		}
+
+		private void endOfStream() throws IOException {
+			if (response.endOfStream()) {
+				finish();
+				close();
+			} else {
+				throw new IOException("Connection closed by " + host.name);
+			}
+		}
+
+		/**
+		 * Completes the exchange and makes the connection idle, or closes it.
+		 */
+		private void finish() {
+			final Exchange done = exchange;
+			final Response result = response;
+			exchange = null;
+			request = null;
+			response = null;
+			reused = true;
+			deadline = 0;
+			if (result.keepAlive && open) {
+				key.interestOps(SelectionKey.OP_READ);
+				host.idle.add(this);
+			} else {
+				close();
+			}
+			done.complete(result);
+		}
+
+		/**
+		 * Closes the connection after a failure, the exchange fails or is sent again.
+		 * 
+		 * @param retry whether a request that got no answer on a reused connection
+		 * may be sent again.
+		 */
+		void fail(final IOException ex, final boolean retry) {
+			final Exchange failed = exchange;
+			final boolean unanswered = response == null || !response.started;
+			exchange = null;
+			close();
+			if (failed != null) {
+				if (retry && reused && unanswered && !failed.retried) {
+					failed.retried = true;
+					host.waiting.addFirst(failed);
+				} else {
+					failed.future.fail(ex);
+				}
+			}
+		}
+
+		private void close() {
+			if (!open) {
+				return;
+			}
+			open = false;
+			key.cancel();
+			try {
+				channel.close();
+			} catch (IOException ex) {
+				// already unusable
+			}
+			connections.remove(this);
+			host.idle.remove(this);
+			host.open--;
+		}
+	}
+
+	private static long deadline(final long timeoutNanos) {
+		if (timeoutNanos <= 0) {
+			return 0;
+		}
+		final long deadline = System.nanoTime() + timeoutNanos;
+		// 0 means no deadline
+		return deadline == 0 ? 1 : deadline;
+	}
+
+	private static ByteBuffer enlarge(final ByteBuffer buffer, final int size) {
+		final ByteBuffer larger = ByteBuffer.allocate(Math.max(size, buffer.capacity() * 2));
+		buffer.flip();
+		larger.put(buffer);
+		return larger;
+	}
+
+	private static SSLEngine createEngine(final String host, final int port) throws IOException {
+		final SSLContext context;
+		try {
+			context = SSLContext.getDefault();
+		} catch (NoSuchAlgorithmException ex) {
+			throw new SSLException(ex.toString());
+		}
+		final SSLEngine engine = context.createSSLEngine(host, port);
+		engine.setUseClientMode(true);
+		final SSLParameters parameters = engine.getSSLParameters();
+		try {
+			// Java 7, HttpsURLConnection checks the host name the same way
+			final Method method = SSLParameters.class.getMethod("setEndpointIdentificationAlgorithm", String.class);
+			method.invoke(parameters, "HTTPS");
+		} catch (NoSuchMethodException ex) {
+			throw new SSLException("Verifying the host name of " + host + " needs Java 7 or later.");
+		} catch (IllegalAccessException ex) {
+			throw new SSLException(ex.toString());
+		} catch (InvocationTargetException ex) {
+			throw new SSLException(ex.getCause().toString());
+		}
+		engine.setSSLParameters(parameters);
+		return engine;
+	}
+
+	/**
+	 * A request and the future of its response.
+	 */
+	private static final class Exchange {
+
+		private final String method;
+		private final URL url;
+		private final ByteBuffer request;
+		private final CallbackFuture<String> future = new CallbackFuture<String>();
+		private boolean retried;
+
+		Exchange(final String method, final URL url, final Map<String, String> headers, final String body) throws IOException {
+			if (!"http".equals(url.getProtocol()) && !"https".equals(url.getProtocol())) {
+				throw new MalformedURLException("Unsupported protocol: " + url.getProtocol());
+			}
+			this.method = method;
+			this.url = url;
+			final StringBuilder head = new StringBuilder(256);
+			head.append(method).append(' ').append(url.getFile().length() == 0 ? "/" : url.getFile()).append(" HTTP/1.1\r\n");
+			head.append("Host: ").append(url.getHost());
+			if (url.getPort() != -1 && url.getPort() != url.getDefaultPort()) {
+				head.append(':').append(url.getPort());
+			}
+			head.append("\r\n");
+			for (final Map.Entry<String, String> header : headers.entrySet()) {
+				if (header.getValue().indexOf('\r') >= 0 || header.getValue().indexOf('\n') >= 0) {
+					throw new IOException("Illegal value for header " + header.getKey());
+				}
+				head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+			}
+			final byte[] content = body == null ? null : body.getBytes(GoogleAPI.ENCODING);
+			if (content != null) {
+				head.append("Content-Length: ").append(content.length).append("\r\n");
+			}
+			head.append("\r\n");
+			final byte[] headBytes = head.toString().getBytes(ASCII);
+			final ByteBuffer bytes = ByteBuffer.allocate(headBytes.length + (content == null ? 0 : content.length));
+			bytes.put(headBytes);
+			if (content != null) {
+				bytes.put(content);
+			}
+			bytes.flip();
+			this.request = bytes;
+		}
+
+		void complete(final Response response) {
+			final String body;
+			try {
+				body = response.body.toString(GoogleAPI.ENCODING);
+			} catch (UnsupportedEncodingException ex) {
+				throw new IllegalStateException(ex);
+			}
+			if (response.status >= 200 && response.status < 300) {
+				future.complete(body);
+			} else {
+				future.fail(new HttpStatusException(response.status, response.reason, body));
+			}
+		}
+	}
+
+	/**
+	 * Parses a response as it arrives.
+	 */
+	private static final class Response {
+
+		private static final int MAX_LINE = 64 * 1024;
+		private static final int STATUS = 0, HEADERS = 1, LENGTH = 2, CHUNK_SIZE = 3, CHUNK_DATA = 4,
+				CHUNK_END = 5, TRAILERS = 6, UNTIL_CLOSE = 7, DONE = 8;
+		private final boolean head;
+		private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+		private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+		private int state = STATUS;
+		private long remaining;
+		private int status;
+		private String reason;
+		private boolean http11;
+		private boolean keepAlive;
+		private boolean close;
+		private boolean chunked;
+		private long contentLength;
+		private boolean started;
+
+		Response(final boolean head) {
+			this.head = head;
+		}
+
+		/**
+		 * @return true once the response is complete.
+		 */
+		boolean feed(final ByteBuffer in) throws IOException {
+			started |= in.hasRemaining();
+			while (in.hasRemaining() && state != DONE) {
+				switch (state) {
+				case LENGTH:
+				case CHUNK_DATA:
+					final int n = (int) Math.min(remaining, in.remaining());
+					body.write(in.array(), in.arrayOffset() + in.position(), n);
+					in.position(in.position() + n);
+					remaining -= n;
+					if (remaining == 0) {
+						state = state == LENGTH ? DONE : CHUNK_END;
+					}
+					break;
+				case UNTIL_CLOSE:
+					body.write(in.array(), in.arrayOffset() + in.position(), in.remaining());
+					in.position(in.limit());
+					break;
+				default:
+					final String text = readLine(in);
+					if (text != null) {
+						line(text);
+					}
+					break;
+				}
+			}
+			return state == DONE;
+		}
+
+		/**
+		 * @return true if the end of the stream completes the response.
+		 */
+		boolean endOfStream() {
+			if (state == UNTIL_CLOSE) {
+				state = DONE;
+				return true;
+			}
+			return false;
+		}
+
+		private String readLine(final ByteBuffer in) throws IOException {
+			while (in.hasRemaining()) {
+				final byte b = in.get();
+				if (b == '\n') {
+					final byte[] bytes = line.toByteArray();
+					line.reset();
+					final int length = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+					return new String(bytes, 0, length, "ISO-8859-1");
+				}
+				if (line.size() >= MAX_LINE) {
+					throw new IOException("Response line too long.");
+				}
+				line.write(b);
+			}
+			return null;
+		}
+
+		private void line(final String text) throws IOException {
+			switch (state) {
+			case STATUS:
+				// HTTP/1.1 200 OK
+				final String[] parts = text.split(" ", 3);
+				if (parts.length < 2 || !parts[0].startsWith("HTTP/")) {
+					throw new IOException("Malformed status line: " + text);
+				}
+				http11 = !"HTTP/1.0".equals(parts[0]);
+				try {
+					status = Integer.parseInt(parts[1]);
+				} catch (NumberFormatException ex) {
+					throw new IOException("Malformed status line: " + text);
+				}
+				reason = parts.length > 2 ? parts[2] : "";
+				keepAlive = false;
+				close = false;
+				chunked = false;
+				contentLength = -1;
+				state = HEADERS;
+				break;
+			case HEADERS:
+				if (text.length() > 0) {
+					header(text);
+				} else if (status >= 100 && status < 200) {
+					// interim response, the real one follows
+					state = STATUS;
+				} else {
+					keepAlive = http11 ? !close : keepAlive;
+					if (head || status == 204 || status == 304) {
+						state = DONE;
+					} else if (chunked) {
+						state = CHUNK_SIZE;
+					} else if (contentLength >= 0) {
+						remaining = contentLength;
+						state = remaining == 0 ? DONE : LENGTH;
+					} else {
+						keepAlive = false;
+						state = UNTIL_CLOSE;
+					}
+				}
+				break;
+			case CHUNK_SIZE:
+				final int extension = text.indexOf(';');
+				try {
+					remaining = Long.parseLong((extension < 0 ? text : text.substring(0, extension)).trim(), 16);
+				} catch (NumberFormatException ex) {
+					throw new IOException("Malformed chunk size: " + text);
+				}
+				state = remaining == 0 ? TRAILERS : CHUNK_DATA;
+				break;
+			case CHUNK_END:
+				state = CHUNK_SIZE;
+				break;
+			case TRAILERS:
+				if (text.length() == 0) {
+					state = DONE;
+				}
+				break;
+			default:
+				throw new IllegalStateException();
+			}
+		}
+
+		private void header(final String text) throws IOException {
+			final int colon = text.indexOf(':');
+			if (colon <= 0) {
+				throw new IOException("Malformed header: " + text);
+			}
+			final String name = text.substring(0, colon).trim();
+			final String value = text.substring(colon + 1).trim();
+			if ("Content-Length".equalsIgnoreCase(name)) {
+				try {
+					contentLength = Long.parseLong(value);
+				} catch (NumberFormatException ex) {
+					throw new IOException("Malformed Content-Length: " + value);
+				}
+			} else if ("Transfer-Encoding".equalsIgnoreCase(name)) {
+				chunked = value.toLowerCase().endsWith("chunked");
+			} else if ("Connection".equalsIgnoreCase(name)) {
+				close = value.equalsIgnoreCase("close");
+				keepAlive = value.equalsIgnoreCase("keep-alive");
+			}
+		}
+	}
+}
@@ -0,0 +1,154 @@
+/**
+ * UrlConnectionTransport.java
+ *
+ * This file is part of google-api-translate-java.
+ *
+ * google-api-translate-java is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * google-api-translate-java is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with google-api-translate-java. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.google.api;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+/**
+ * {@link HttpTransport} built on {@link HttpURLConnection}.
+ * 
+ * The JRE keeps idle HTTP/1.1 connections in a keep-alive cache and hands them
+ * to later requests to the same host, which saves a TCP and TLS handshake per
+ * request. A connection only goes back to that cache once its response has
+ * been read to the end and closed, which this transport always does, error
+ * responses included. The number of connections open at once is bounded by
+ * {@code maxConnections}; requests beyond that wait for a connection to be
+ * released. The JRE's cache keeps up to {@code http.maxConnections} idle
+ * connections per host, 5 by default. That is a JVM-wide setting read once,
+ * so this transport leaves it alone; to keep more than 5 connections alive
+ * between requests, start the JVM with {@code -Dhttp.maxConnections=n}
+ * (for Maven, in {@code MAVEN_OPTS}). Connections beyond it still work,
+ * they are just closed after their request.
+ * 
+ * HttpURLConnection doesn't pipeline requests or speak HTTP/2, so each
+ * connection carries one request at a time.
+ */
+public class UrlConnectionTransport implements HttpTransport {
+	
+	/**
+	 * Defaults.
+	 */
+	public static final int DEFAULT_MAX_CONNECTIONS = 10,
+			DEFAULT_CONNECT_TIMEOUT = 10000,
+			DEFAULT_READ_TIMEOUT = 30000;
+	
+	private final Semaphore connections;
+	private final int connectTimeout;
+	private final int readTimeout;
+	
+	public UrlConnectionTransport() {
+		this(DEFAULT_MAX_CONNECTIONS, DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT);
+	}
+	
+	/**
+	 * @param maxConnections The maximum number of connections open at once.
+	 * @param connectTimeout The connect timeout in milliseconds, 0 for none.
+	 * @param readTimeout The read timeout in milliseconds, 0 for none.
+	 */
+	public UrlConnectionTransport(final int maxConnections, final int connectTimeout, final int readTimeout) {
+		if (maxConnections < 1) {
+			throw new IllegalArgumentException("maxConnections must be at least 1.");
+		}
+		this.connections = new Semaphore(maxConnections, true);
+		this.connectTimeout = connectTimeout;
+		this.readTimeout = readTimeout;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String execute(final String method, final URL url, final Map<String, String> headers, final String body) throws IOException {
+		try {
+			connections.acquire();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for a connection to " +url.getHost());
+		}
+		try {
+			return send(method, url, headers, body);
+		} finally {
+			connections.release();
+		}
+	}
+	
+	private String send(final String method, final URL url, final Map<String, String> headers, final String body) throws IOException {
+		final HttpURLConnection uc = (HttpURLConnection) url.openConnection();
+		uc.setConnectTimeout(connectTimeout);
+		uc.setReadTimeout(readTimeout);
+		uc.setRequestMethod(method);
+		for (final Map.Entry<String, String> header : headers.entrySet()) {
+			uc.setRequestProperty(header.getKey(), header.getValue());
+		}
+		
+		if (body != null) {
+			final byte[] bytes = body.getBytes(GoogleAPI.ENCODING);
+			uc.setDoOutput(true);
+			uc.setFixedLengthStreamingMode(bytes.length);
+			final OutputStream out = uc.getOutputStream();
+			try {
+				out.write(bytes);
+			} finally {
+				out.close();
+			}
+		}
+		
+		final int status;
+		try {
+			status = uc.getResponseCode();
+		} catch (IOException ex) {
+			// the connection is broken, drop it instead of returning it to the keep-alive cache
+			uc.disconnect();
+			throw ex;
+		}
+		
+		if (status >= 200 && status < 300) {
+			return read(uc.getInputStream());
+		}
+		throw new HttpStatusException(status, uc.getResponseMessage(), read(uc.getErrorStream()));
+	}
+	
+	/**
+	 * Reads a response to the end and closes it, which releases the connection to the keep-alive cache.
+	 */
+	private static String read(final InputStream in) throws IOException {
+		if (in == null) {
+			return "";
+		}
+		try {
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			final byte[] buffer = new byte[8192];
+			int n;
+			while ((n = in.read(buffer)) != -1) {
+				bytes.write(buffer, 0, n);
+			}
+			return bytes.toString(GoogleAPI.ENCODING);
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,38 @@
+/**
+ * AsyncTranslate.java
+ *
+ * This file is part of google-api-translate-java.
+ *
+ * google-api-translate-java is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * google-api-translate-java is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with google-api-translate-java. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.google.api.translate;
+
+import com.google.api.CallbackFuture;
+
+/**
+ * A {@link Translate} that can also translate without blocking the calling thread.
+ */
+public interface AsyncTranslate extends Translate {
+
+    /**
+     * Starts translating an array of text Strings from a given Language to another given Language.
+     * 
+     * @param text The array of Strings to translate.
+     * @param from The language code to translate from.
+     * @param to The language code to translate to.
+     * @return A future completed with the translated array of String results, or failed with a
+     * GoogleAPIException on error.
+     */
+	CallbackFuture<String[]> executeAsync(String[] text, Language from, Language to);
+}
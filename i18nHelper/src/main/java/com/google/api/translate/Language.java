@@ -20,6 +20,9 @@
  */
 package com.google.api.translate;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * Defines language information for the Google Translate API.
  *
@@ -126,6 +129,20 @@ public enum Language {
 	 */
 	private final String language;
 	
+	/**
+	 * Languages by identifier, where two languages share an identifier the
+	 * first one declared wins.
+	 */
+	private static final Map<String, Language> BY_LANGUAGE = new HashMap<String, Language>();
+	
+	static {
+		for (Language l : values()) {
+			if (!BY_LANGUAGE.containsKey(l.language)) {
+				BY_LANGUAGE.put(l.language, l);
+			}
+		}
+	}
+	
 	/**
 	 * Enum constructor.
 	 * @param pLanguage The language identifier.
@@ -135,12 +152,7 @@ public enum Language {
 	}
 	
 	public static Language fromString(final String pLanguage) {
-		for (Language l : values()) {
-			if (l.toString().equals(pLanguage)) {
-				return l;
-			}
-		}
-		return null;
+		return BY_LANGUAGE.get(pLanguage);
 	}
 	
 	/**
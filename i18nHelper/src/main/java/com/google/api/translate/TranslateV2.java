@@ -22,10 +22,17 @@ package com.google.api.translate;
 
 import java.net.URL;
 import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
 
+import com.google.api.Callback;
+import com.google.api.CallbackFuture;
 import com.google.api.GoogleAPI;
 import com.google.api.GoogleAPIException;
 import com.tecnick.htmlutils.htmlentities.HTMLEntities;
@@ -36,12 +43,59 @@ import com.tecnick.htmlutils.htmlentities.HTMLEntities;
  * @author William Ferguson
  * @author Richard Midwinter
  */
-public final class TranslateV2 extends GoogleAPI implements Translate {
+public final class TranslateV2 extends GoogleAPI implements AsyncTranslate {
 	
 	/**
 	 * Constants.
 	 */
-    private static final String	URL_TEMPLATE = "https://www.googleapis.com/language/translate/v2?key=%s&q=%s&target=%s";
+    private static final String	URL_TEMPLATE = "%s?key=%s&q=%s&target=%s",
+    		TEXT_PARAM = "&q=";
+    
+    /**
+     * The default Google Translate v2 endpoint.
+     */
+    public static final String DEFAULT_ENDPOINT = "https://www.googleapis.com/language/translate/v2";
+    
+    /**
+     * Maximum number of texts Google accepts in a single request.
+     */
+    private static final int MAX_SEGMENTS = 128;
+    
+    /**
+     * Maximum length of the encoded <code>&amp;q=</code> parameters sent in a single request.
+     * Batches are POSTed with an <code>X-HTTP-Method-Override: GET</code> header, which lifts the
+     * 2K URL limit to Google's 5K request body limit.
+     */
+    private static final int MAX_QUERY_LENGTH = 4500;
+    
+    /**
+     * The URL requests are sent to.
+     */
+    private final String endpoint;
+    
+    /**
+     * Uses the Google Translate v2 endpoint.
+     */
+    public TranslateV2() {
+    	this(DEFAULT_ENDPOINT);
+    }
+    
+    /**
+     * Sends requests to another endpoint speaking the v2 protocol, such as a local stub server.
+     * 
+     * @param endpoint The URL to send requests to.
+     */
+    public TranslateV2(final String endpoint) {
+    	this.endpoint = endpoint;
+    }
+    
+    /**
+     * Returns the URL requests are sent to.
+     * @return The endpoint URL.
+     */
+    public String getEndpoint() {
+    	return endpoint;
+    }
 
     /**
      * {@inheritDoc}
@@ -55,7 +109,7 @@ public final class TranslateV2 extends GoogleAPI implements Translate {
 	    		throw new IllegalStateException("You MUST have a Google API Key to use the V2 APIs. See http://code.google.com/apis/language/translate/v2/getting_started.html");
 	    	}
 	    	
-	    	final String populatedTemplate = String.format(URL_TEMPLATE, key, URLEncoder.encode(text, ENCODING), to.toString());
+	    	final String populatedTemplate = String.format(URL_TEMPLATE, endpoint, key, URLEncoder.encode(text, ENCODING), to.toString());
 	    	
 	    	final URL url = new URL(Language.AUTO_DETECT.equals(from) ? populatedTemplate : populatedTemplate + String.format("&source=%s", from.toString()));
 	    	
@@ -130,9 +184,34 @@ public final class TranslateV2 extends GoogleAPI implements Translate {
 	    		return new String[] { execute(text[0], from[0], to[0]) };
 	    	}
 	    	
+	    	if (key == null) {
+	    		throw new IllegalStateException("You MUST have a Google API Key to use the V2 APIs. See http://code.google.com/apis/language/translate/v2/getting_started.html");
+	    	}
+	    	
 	    	final String[] responses = new String[text.length];
-	    	for (int i = 0; i < responses.length; i++) {
-	    		responses[i] = execute(text[i], from[i], to[i]);
+	    	
+	    	// Group the texts by language pair, keeping their original positions.
+	    	final Map<String, List<Integer>> pairs = new LinkedHashMap<String, List<Integer>>();
+	    	for (int i = 0; i < text.length; i++) {
+	    		final String pair = from[i] + "|" + to[i];
+	    		List<Integer> indices = pairs.get(pair);
+	    		if (indices == null) {
+	    			indices = new ArrayList<Integer>();
+	    			pairs.put(pair, indices);
+	    		}
+	    		indices.add(Integer.valueOf(i));
+	    	}
+	    	
+	    	for (final List<Integer> indices : pairs.values()) {
+	    		final int first = indices.get(0).intValue();
+	    		final Language pairFrom = from[first];
+	    		final Language pairTo = to[first];
+	    		
+	    		final List<String> queries = new ArrayList<String>();
+	    		final List<List<Integer>> batches = split(text, indices, queries);
+	    		for (int i = 0; i < batches.size(); i++) {
+	    			executeBatch(batches.get(i), queries.get(i), pairFrom, pairTo, responses);
+	    		}
 	    	}
 	    	
 	    	return responses;
@@ -141,6 +220,159 @@ public final class TranslateV2 extends GoogleAPI implements Translate {
     	}
     }
     
+    /**
+     * {@inheritDoc}
+     * 
+     * Every request is a batch, sent with the transport set by {@link GoogleAPI#setAsyncTransport},
+     * or right away with the blocking one if there is none.
+     */
+    @Override
+    public CallbackFuture<String[]> executeAsync(final String[] text, final Language from, final Language to) {
+    	final CallbackFuture<String[]> result = new CallbackFuture<String[]>();
+    	try {
+	    	validateReferrer();
+	    	
+	    	if (key == null) {
+	    		throw new IllegalStateException("You MUST have a Google API Key to use the V2 APIs. See http://code.google.com/apis/language/translate/v2/getting_started.html");
+	    	}
+	    	
+	    	final String[] responses = new String[text.length];
+	    	final List<Integer> indices = new ArrayList<Integer>(text.length);
+	    	for (int i = 0; i < text.length; i++) {
+	    		indices.add(Integer.valueOf(i));
+	    	}
+	    	final List<String> queries = new ArrayList<String>();
+	    	final List<List<Integer>> batches = split(text, indices, queries);
+	    	if (batches.isEmpty()) {
+	    		result.complete(responses);
+	    		return result;
+	    	}
+	    	
+	    	final AtomicInteger remaining = new AtomicInteger(batches.size());
+	    	final URL url = new URL(endpoint);
+	    	for (int i = 0; i < batches.size(); i++) {
+	    		final List<Integer> batch = batches.get(i);
+	    		retrieveJSONAsync(url, parameters(queries.get(i), from, to), "GET").addCallback(new Callback<JSONObject>() {
+	    			
+	    			@Override
+	    			public void completed(final JSONObject json) {
+	    				try {
+	    					readBatch(batch, json, responses);
+	    				} catch (Exception ex) {
+	    					failed(ex);
+	    					return;
+	    				}
+	    				if (remaining.decrementAndGet() == 0) {
+	    					result.complete(responses);
+	    				}
+	    			}
+	    			
+	    			@Override
+	    			public void failed(final Exception ex) {
+	    				result.fail(new GoogleAPIException(ex));
+	    			}
+	    		});
+	    	}
+    	} catch (final Exception e) {
+    		result.fail(new GoogleAPIException(e));
+    	}
+    	return result;
+    }
+    
+    /**
+     * Splits texts sharing a language pair into batches Google accepts in a single request.
+     * 
+     * @param text The texts.
+     * @param indices The positions of the texts to split.
+     * @param queries Receives the encoded <code>&amp;q=</code> parameters of each batch.
+     * @return The positions of the texts in each batch.
+     * @throws Exception if a text cannot be encoded.
+     */
+    private static List<List<Integer>> split(final String[] text, final List<Integer> indices, final List<String> queries) throws Exception {
+    	final List<List<Integer>> batches = new ArrayList<List<Integer>>();
+    	List<Integer> batch = new ArrayList<Integer>();
+    	final StringBuilder batchQueries = new StringBuilder();
+    	for (final Integer index : indices) {
+    		final String query = TEXT_PARAM + URLEncoder.encode(text[index.intValue()], ENCODING);
+    		if (!batch.isEmpty() && (batch.size() == MAX_SEGMENTS || batchQueries.length() + query.length() > MAX_QUERY_LENGTH)) {
+    			batches.add(batch);
+    			queries.add(batchQueries.toString());
+    			batch = new ArrayList<Integer>();
+    			batchQueries.setLength(0);
+    		}
+    		batch.add(index);
+    		batchQueries.append(query);
+    	}
+    	if (!batch.isEmpty()) {
+    		batches.add(batch);
+    		queries.add(batchQueries.toString());
+    	}
+    	return batches;
+    }
+    
+    /**
+     * Sends one batched request for texts sharing a language pair and stores the results at their original positions.
+     * 
+     * @param batch The positions of the texts in the caller's array.
+     * @param queries The encoded <code>&amp;q=</code> parameters for those texts, in the same order.
+     * @param from The language to translate from.
+     * @param to The language to translate to.
+     * @param responses The array receiving the translated texts.
+     * @throws Exception on error, or if Google returns a different number of translations than requested.
+     */
+    private void executeBatch(final List<Integer> batch, final CharSequence queries, final Language from, final Language to,
+    		final String[] responses) throws Exception {
+    	readBatch(batch, retrieveJSON(new URL(endpoint), parameters(queries, from, to), "GET"), responses);
+    }
+    
+    /**
+     * Returns the form parameters of a batched request.
+     * 
+     * @param queries The encoded <code>&amp;q=</code> parameters of the texts.
+     * @param from The language to translate from.
+     * @param to The language to translate to.
+     * @return The request body.
+     */
+    private static String parameters(final CharSequence queries, final Language from, final Language to) {
+    	final StringBuilder parameters = new StringBuilder();
+    	parameters.append("key=").append(key).append("&target=").append(to.toString());
+    	if (!Language.AUTO_DETECT.equals(from)) {
+    		parameters.append("&source=").append(from.toString());
+    	}
+    	parameters.append(queries);
+    	return parameters.toString();
+    }
+    
+    /**
+     * Stores the translations of a batched response at their original positions.
+     * 
+     * @param batch The positions of the texts in the caller's array.
+     * @param json The response.
+     * @param responses The array receiving the translated texts.
+     * @throws Exception if Google returns a different number of translations than requested.
+     */
+    private static void readBatch(final List<Integer> batch, final JSONObject json, final String[] responses) throws Exception {
+    	final JSONArray translations = json.getJSONObject("data").getJSONArray("translations");
+    	
+    	if (translations.length() != batch.size()) {
+    		throw new Exception("[google-api-translate-java] Expected " +batch.size() +" translations but received "
+    				+translations.length() +".");
+    	}
+    	
+    	//one buffer for the whole batch, only texts with entities go through it
+    	final StringBuilder decoded = new StringBuilder();
+    	for (int i = 0; i<batch.size(); i++) {
+    		final String translatedText = translations.getJSONObject(i).getString("translatedText");
+    		if (translatedText.indexOf('&') < 0) {
+    			responses[batch.get(i).intValue()] = translatedText;
+    		} else {
+    			decoded.setLength(0);
+    			HTMLEntities.unhtmlentities(translatedText, decoded);
+    			responses[batch.get(i).intValue()] = decoded.toString();
+    		}
+    	}
+    }
+    
     /**
      * Returns the JSON response data as a String. Throws an exception if the status is not a 200 OK.
      * 
@@ -0,0 +1,30 @@
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.summit.i18nhelper;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a request would go over the run's request or character budget.
+ */
+public class BudgetExceededException extends IOException {
+
+    private static final long serialVersionUID = 4735019211617350174L;
+
+    public BudgetExceededException(String message) {
+        super(message);
+    }
+}
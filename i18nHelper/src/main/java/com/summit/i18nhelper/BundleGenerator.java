@@ -15,18 +15,19 @@
  */
 package com.summit.i18nhelper;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Properties;
 import org.apache.maven.plugin.logging.Log;
 
 /**
@@ -35,8 +36,36 @@ import org.apache.maven.plugin.logging.Log;
  */
 public class BundleGenerator {
 
+    /**
+     * Number of characters a locale file may have waiting before they are
+     * written out.
+     */
+    private static final int SPILL_SIZE = 64 * 1024;
+    /**
+     * Default for the memory the open locale files may take.
+     */
+    public static final long DEFAULT_MEMORY = 64L * 1024 * 1024;
     Log mavenLog;
-    Map<String, Map<String, Properties>> explicitProperties;
+    private final long maxMemory;
+    /**
+     * Estimated bytes held for the open locale files, their explicit keys
+     * and the lines waiting to be written.
+     */
+    private long memory;
+    /**
+     * Output of the current run by base file and locale, least recently used
+     * base file first.
+     */
+    private final Map<String, LocaleOutput[]> localeOutputs = new LinkedHashMap<String, LocaleOutput[]>(16, 0.75f, true);
+    /**
+     * Length of every locale file before this run wrote to it, -1 if it
+     * didn't exist. A file released from {@link #localeOutputs} gets its
+     * explicit keys back from that part of the file.
+     */
+    private final Map<File, Long> originalLengths = new HashMap<File, Long>();
+    private long keysWritten;
+    private int filesWritten;
+    private long bytesWritten;
     private static final String WRITTEN_FILE_NOTICE = ""
             + "#**************************************************\r\n"
             + "#Resource automatically generated with i18nHelper *\r\n"
@@ -45,48 +74,86 @@ public class BundleGenerator {
             + "#**************************************************";
 
     public BundleGenerator(Log log) {
-        explicitProperties = new LinkedHashMap<String, Map<String, Properties>>();
+        this(log, DEFAULT_MEMORY);
+    }
+
+    /**
+     * @param maxMemory roughly how many bytes the open locale files may take,
+     * the keys they already set and the lines waiting to be written. Past it
+     * the files of the least recently used base files are written out and
+     * released, then the lines waiting for the current base file are written
+     * out.
+     */
+    public BundleGenerator(Log log, long maxMemory) {
         mavenLog = log;
+        this.maxMemory = maxMemory;
     }
 
+    /**
+     * Generates the locale files described by {@code inputFile} under
+     * {@code baseDir}.
+     *
+     * The input is read once, each {@code #file} comment starts the section
+     * of a base file and each {@code key.locale} property in it is written to
+     * that locale's file, unless the file already sets the key.
+     */
     public void generateResources(File baseDir, File inputFile, List<String> languageCodes, Log log) throws IOException {
-        final Properties fullFile = new Properties();
+        keysWritten = 0;
+        filesWritten = 0;
+        bytesWritten = 0;
         final Charset charset = Charset.forName("UTF-8");
-        fullFile.load(new InputStreamReader(new FileInputStream(inputFile), charset));
-
-        BufferedReader in = null;
+        PropertiesReader in = new PropertiesReader(new InputStreamReader(new FileInputStream(inputFile), charset));
 
         try {
-            in = new BufferedReader(new InputStreamReader(new FileInputStream(inputFile), charset));
-
+            LocaleIndex locales = new LocaleIndex(languageCodes);
             String currentFile = "";
-            String line;
-            while ((line = in.readLine()) != null) {
-                //FIX ME this needs to be a better wildcard.
-                if (line.startsWith("#")) {
-                    currentFile = line.substring(line.indexOf("#") + 1).replaceAll("\\\\", "/");
-                    log.debug("Current base file: " + currentFile);
-
-                } else {
-                    int splitIndex = line.indexOf("=");
-                    //if it doesnt have "=" or its empty after "=", skip
-                    if (splitIndex < 0 || splitIndex == line.length() - 1) {
-                        continue;
-                    } else {
-                        String[] splitLine = line.split("=");
-                        int pointIndex = splitLine[0].lastIndexOf(".");
-                        if (pointIndex > 0) {
-                            String possibleCode = splitLine[0].substring(pointIndex + 1);
-                            String key = splitLine[0].substring(0, pointIndex);
-                            if (languageCodes.contains(possibleCode)) {
-                                final String property = GoogleTranslateMojo.nativeToAscii(fullFile.getProperty(splitLine[0]));
-                                appendToFile(possibleCode, baseDir, currentFile, key, property);
-                            }
-                        }
+            LocaleOutput[] currentOutputs = null;
+            while (in.next()) {
+                if (in.getType() == PropertiesReader.Type.COMMENT) {
+                    String line = in.getRaw();
+                    //FIX ME this needs to be a better wildcard.
+                    if (line.startsWith("#")) {
+                        currentFile = line.substring(1).replace('\\', '/');
+                        log.debug("Current base file: " + currentFile);
+                        currentOutputs = null;
                     }
+                    continue;
+                }
+                if (in.getType() != PropertiesReader.Type.PROPERTY) {
+                    continue;
+                }
+                String localeKey = in.getKey();
+                int pointIndex = localeKey.lastIndexOf('.');
+                if (pointIndex <= 0) {
+                    continue;
+                }
+                int locale = locales.indexOf(localeKey, pointIndex + 1, localeKey.length());
+                if (locale < 0) {
+                    continue;
                 }
+                //only values of the generated locales are decoded
+                String value = in.getValue();
+                //skip untranslated values
+                if (value.length() == 0) {
+                    continue;
+                }
+                if (currentOutputs == null) {
+                    currentOutputs = localeOutputs(baseDir, currentFile, locales.size());
+                }
+                if (currentOutputs[locale] == null) {
+                    currentOutputs[locale] = localeOutput(baseDir, currentFile, locales.getCode(locale));
+                }
+                appendToFile(currentOutputs[locale], localeKey.substring(0, pointIndex), value);
+            }
+            flushAll();
+            for (Map.Entry<File, Long> file : originalLengths.entrySet()) {
+                filesWritten++;
+                bytesWritten += file.getKey().length() - Math.max(0, file.getValue());
             }
         } finally {
+            localeOutputs.clear();
+            originalLengths.clear();
+            memory = 0;
             try {
                 in.close();
             } catch (IOException ex) {
@@ -94,61 +161,197 @@ public class BundleGenerator {
         }
     }
 
-    private void appendToFile(String locale, File baseDir, String baseFile, String key, String value) throws IOException {
-        String localeFile = baseFile.replaceAll(".properties", "_" + locale + ".properties");
-        mavenLog.debug("BaseDir: " + baseDir + " Base File: " + baseFile);
-        File dir;
-        if (baseFile.lastIndexOf("/") > 0) {
-            dir = new File(baseDir, baseFile.substring(0, baseFile.lastIndexOf("/")));
-        }else{
-            dir = new File(baseDir,baseFile);
-        }
-        if (!dir.exists()) {
-            dir.mkdirs();
+    /**
+     * @return the keys added to locale files by the last run
+     */
+    public long getKeysWritten() {
+        return keysWritten;
+    }
+
+    /**
+     * @return the locale files the last run wrote to
+     */
+    public int getFilesWritten() {
+        return filesWritten;
+    }
+
+    /**
+     * @return the bytes the last run added to the locale files
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    private void appendToFile(LocaleOutput out, String key, String value) throws IOException {
+        if (!out.explicit.contains(key)) {
+            keysWritten++;
+            StringBuilder text = out.text();
+            int start = text.length();
+            text.append("#Line Added by i18nHelper\r\n");
+            //the key was decoded by the reader
+            PropertiesReader.escapeKey(key, text);
+            text.append('=');
+            GoogleTranslateMojo.nativeToAscii(value, text);
+            text.append("\r\n");
+            memory += 2L * (text.length() - start);
+            if (text.length() >= SPILL_SIZE) {
+                memory -= out.flush();
+            }
+            releaseLeastRecentlyUsed();
         }
-        File f = new File(baseDir, localeFile);
-        if (!f.exists()) {
-            f.createNewFile();
-            writeLineToFile(WRITTEN_FILE_NOTICE, f);
+    }
+
+    /**
+     * @return the locale files of a base file, by locale id, resolved as
+     * they are first written to
+     */
+    private LocaleOutput[] localeOutputs(File baseDir, String baseFile, int localeCount) {
+        LocaleOutput[] outputs = localeOutputs.get(baseFile);
+        if (outputs == null) {
+            mavenLog.debug("BaseDir: " + baseDir + " Base File: " + baseFile);
+            outputs = new LocaleOutput[localeCount];
+            localeOutputs.put(baseFile, outputs);
         }
-        mavenLog.debug("Writing to locale file: " + f.getPath());
+        return outputs;
+    }
 
+    /**
+     * Resolves a locale file and loads the keys it already sets.
+     */
+    private LocaleOutput localeOutput(File baseDir, String baseFile, String locale) throws IOException {
+        File file = new File(baseDir, localeFileName(baseFile, locale));
+        mavenLog.debug("Writing to locale file: " + file.getPath());
+        Long originalLength = originalLengths.get(file);
+        boolean created = false;
+        if (originalLength == null) {
+            created = !file.exists();
+            originalLength = created ? -1 : file.length();
+            originalLengths.put(file, originalLength);
+        }
+        LocaleOutput out = new LocaleOutput(file, ExplicitKeyIndex.load(file, originalLength));
+        if (created) {
+            out.text().append(WRITTEN_FILE_NOTICE).append("\r\n");
+            memory += 2L * out.text().length();
+        }
+        memory += out.explicit.getMemoryEstimate();
+        releaseLeastRecentlyUsed();
+        return out;
+    }
 
-        if (!propertyExplicitelySet(baseFile, f, locale, key)) {
-            writeLineToFile("#Line Added by i18nHelper", f);
-            writeLineToFile(key + "=" + value, f);
+    /**
+     * Writes out and forgets the locale files of the least recently used base
+     * files until they fit in memory again. The current base file is kept,
+     * if it alone is too large its waiting lines are written out.
+     */
+    private void releaseLeastRecentlyUsed() throws IOException {
+        if (memory <= maxMemory) {
+            return;
+        }
+        Iterator<LocaleOutput[]> eldest = localeOutputs.values().iterator();
+        while (memory > maxMemory && localeOutputs.size() > 1) {
+            LocaleOutput[] outputs = eldest.next();
+            eldest.remove();
+            for (LocaleOutput out : outputs) {
+                if (out != null) {
+                    memory -= out.flush();
+                    memory -= out.explicit.getMemoryEstimate();
+                }
+            }
+        }
+        if (memory > maxMemory && eldest.hasNext()) {
+            LocaleOutput[] current = eldest.next();
+            //the keys of the current base file have to stay, its lines are
+            //written once there are enough of them to be worth a write
+            long waiting = 0;
+            for (LocaleOutput out : current) {
+                if (out != null && out.text != null) {
+                    waiting += out.text.length();
+                }
+            }
+            if (waiting >= SPILL_SIZE) {
+                for (LocaleOutput out : current) {
+                    if (out != null) {
+                        memory -= out.flush();
+                    }
+                }
+            }
         }
     }
 
-    private void writeLineToFile(String string, File f) throws IOException {
-        OutputStreamWriter outFile = new OutputStreamWriter(new FileOutputStream(f, true), "UTF-8");
+    private static String localeFileName(String baseFile, String locale) {
+        int extension = baseFile.lastIndexOf(".properties");
+        if (extension < 0) {
+            return baseFile + "_" + locale;
+        }
+        return baseFile.substring(0, extension) + "_" + locale + baseFile.substring(extension);
+    }
 
-        outFile.write(string + "\r\n");
-        outFile.close();
+    private void flushAll() throws IOException {
+        try {
+            for (LocaleOutput[] outputs : localeOutputs.values()) {
+                for (LocaleOutput out : outputs) {
+                    if (out != null) {
+                        out.flush();
+                    }
+                }
+            }
+        } finally {
+            localeOutputs.clear();
+            memory = 0;
+        }
     }
 
-    private boolean propertyExplicitelySet(String baseFile, File localeFile, String locale, String key) throws IOException {
-        Map<String, Properties> propsMapForBaseFile = explicitProperties.get(baseFile);
-        if (propsMapForBaseFile == null) {
-            propsMapForBaseFile = new LinkedHashMap<String, Properties>();
-            explicitProperties.put(baseFile, propsMapForBaseFile);
+    /**
+     * The lines generated for one locale file, written out in one go when
+     * the input has been read, or earlier if they grow past
+     * {@link #SPILL_SIZE}.
+     */
+    private static class LocaleOutput {
+
+        private final File file;
+        /**
+         * The keys the file had before generation, those are not
+         * overwritten.
+         */
+        private final ExplicitKeyIndex explicit;
+        /**
+         * The lines waiting to be written, null once they have been, so a
+         * flushed file doesn't keep the capacity it grew to.
+         */
+        private StringBuilder text;
+
+        LocaleOutput(File file, ExplicitKeyIndex explicit) {
+            this.file = file;
+            this.explicit = explicit;
         }
-        Properties p = propsMapForBaseFile.get(locale);
-        if (p == null) {
-            InputStreamReader in = null;
-            try {
-                p = new Properties();
-                in = new InputStreamReader(new FileInputStream(localeFile), "UTF-8");
-                p.load(in);
 
-                propsMapForBaseFile.put(locale, p);
+        StringBuilder text() {
+            if (text == null) {
+                text = new StringBuilder();
+            }
+            return text;
+        }
+
+        /**
+         * @return the bytes the written lines took
+         */
+        long flush() throws IOException {
+            if (text == null) {
+                return 0;
+            }
+            int length = text.length();
+            File dir = file.getParentFile();
+            if (dir != null && !dir.exists()) {
+                dir.mkdirs();
+            }
+            Writer out = new OutputStreamWriter(new FileOutputStream(file, true), "UTF-8");
+            try {
+                out.append(text);
             } finally {
-                try {
-                    in.close();
-                } catch (IOException ex) {
-                }
+                out.close();
             }
+            text = null;
+            return 2L * length;
         }
-        return p.getProperty(key) != null;
     }
 }
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.summit.i18nhelper;
+
+import com.google.api.Callback;
+import com.google.api.CallbackFuture;
+import com.google.api.GoogleAPIException;
+import com.google.api.translate.AsyncTranslate;
+import com.google.api.translate.Language;
+import com.google.api.translate.Translate;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A {@link Translate} that answers from a {@link TranslationMemory} when it
+ * can and only sends what it hasn't seen before to the wrapped translator.
+ *
+ * Asynchronous calls stay asynchronous when the wrapped translator is an
+ * {@link AsyncTranslate}, otherwise its misses are translated on the calling
+ * thread. Their results arrive on the transport's I/O thread, which must not
+ * block, so they are only queued there; the caller adds them to the memory
+ * from its own thread with {@link #rememberFetched()}.
+ */
+public class CachingTranslate implements AsyncTranslate {
+
+    private final Translate delegate;
+    private final TranslationMemory memory;
+    private final String engine;
+    private final Queue<Fetched> fetched = new ConcurrentLinkedQueue<Fetched>();
+
+    /**
+     * @param delegate the translator used on a cache miss
+     * @param memory where translations are remembered
+     * @param engine identifies the delegate in the memory, translations from
+     * different engines are kept apart
+     */
+    public CachingTranslate(Translate delegate, TranslationMemory memory, String engine) {
+        this.delegate = delegate;
+        this.memory = memory;
+        this.engine = engine;
+    }
+
+    @Override
+    public String execute(String text, Language from, Language to) throws GoogleAPIException {
+        String translation = memory.get(text, code(from), code(to), engine);
+        if (translation == null) {
+            translation = delegate.execute(text, from, to);
+            if (translation != null) {
+                memory.put(text, code(from), code(to), engine, translation);
+            }
+        }
+        return translation;
+    }
+
+    @Override
+    public String[] execute(String[] text, Language from, Language to) throws GoogleAPIException {
+        Language[] fromArgs = new Language[text.length];
+        Language[] toArgs = new Language[text.length];
+        for (int i = 0; i < text.length; i++) {
+            fromArgs[i] = from;
+            toArgs[i] = to;
+        }
+        return execute(text, fromArgs, toArgs);
+    }
+
+    @Override
+    public String[] execute(String text, Language from, Language[] to) throws GoogleAPIException {
+        String[] textArgs = new String[to.length];
+        Language[] fromArgs = new Language[to.length];
+        for (int i = 0; i < to.length; i++) {
+            textArgs[i] = text;
+            fromArgs[i] = from;
+        }
+        return execute(textArgs, fromArgs, to);
+    }
+
+    @Override
+    public String[] execute(String[] text, Language[] from, Language[] to) throws GoogleAPIException {
+        if (text.length != from.length || from.length != to.length) {
+            throw new GoogleAPIException("The same number of texts, from and to languages must be supplied.");
+        }
+        String[] translations = new String[text.length];
+        int[] missing = new int[text.length];
+        int missCount = 0;
+        for (int i = 0; i < text.length; i++) {
+            translations[i] = memory.get(text[i], code(from[i]), code(to[i]), engine);
+            if (translations[i] == null) {
+                missing[missCount++] = i;
+            }
+        }
+        if (missCount == 0) {
+            return translations;
+        }
+
+        //send all the misses in one call so the delegate can still batch them
+        String[] missText = new String[missCount];
+        Language[] missFrom = new Language[missCount];
+        Language[] missTo = new Language[missCount];
+        for (int i = 0; i < missCount; i++) {
+            missText[i] = text[missing[i]];
+            missFrom[i] = from[missing[i]];
+            missTo[i] = to[missing[i]];
+        }
+        String[] fetched = delegate.execute(missText, missFrom, missTo);
+        for (int i = 0; i < missCount; i++) {
+            translations[missing[i]] = fetched[i];
+            if (fetched[i] != null) {
+                memory.put(missText[i], code(missFrom[i]), code(missTo[i]), engine, fetched[i]);
+            }
+        }
+        return translations;
+    }
+
+    @Override
+    public CallbackFuture<String[]> executeAsync(String[] text, final Language from, final Language to) {
+        final CallbackFuture<String[]> result = new CallbackFuture<String[]>();
+        final String[] translations = new String[text.length];
+        final int[] missing = new int[text.length];
+        int missCount = 0;
+        for (int i = 0; i < text.length; i++) {
+            translations[i] = memory.get(text[i], code(from), code(to), engine);
+            if (translations[i] == null) {
+                missing[missCount++] = i;
+            }
+        }
+        if (missCount == 0) {
+            result.complete(translations);
+            return result;
+        }
+
+        final String[] missText = new String[missCount];
+        for (int i = 0; i < missCount; i++) {
+            missText[i] = text[missing[i]];
+        }
+        CallbackFuture<String[]> misses;
+        if (delegate instanceof AsyncTranslate) {
+            misses = ((AsyncTranslate) delegate).executeAsync(missText, from, to);
+        } else {
+            misses = new CallbackFuture<String[]>();
+            try {
+                misses.complete(delegate.execute(missText, from, to));
+            } catch (GoogleAPIException ex) {
+                misses.fail(ex);
+            }
+        }
+        misses.addCallback(new Callback<String[]>() {
+
+            @Override
+            public void completed(String[] values) {
+                for (int i = 0; i < missText.length; i++) {
+                    translations[missing[i]] = values[i];
+                }
+                //remembered later, the memory writes to disk
+                fetched.add(new Fetched(missText, code(from), code(to), values));
+                result.complete(translations);
+            }
+
+            @Override
+            public void failed(Exception ex) {
+                result.fail(ex);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Adds the translations fetched by {@link #executeAsync} so far to the
+     * memory. Call it from a thread that may block, at least once after the
+     * last asynchronous call completed.
+     */
+    public void rememberFetched() {
+        for (Fetched batch = fetched.poll(); batch != null; batch = fetched.poll()) {
+            for (int i = 0; i < batch.text.length; i++) {
+                if (batch.translations[i] != null) {
+                    memory.put(batch.text[i], batch.from, batch.to, engine, batch.translations[i]);
+                }
+            }
+        }
+    }
+
+    private static String code(Language language) {
+        return language == null ? null : language.toString();
+    }
+
+    private static final class Fetched {
+
+        final String[] text;
+        final String from;
+        final String to;
+        final String[] translations;
+
+        Fetched(String[] text, String from, String to, String[] translations) {
+            this.text = text;
+            this.from = from;
+            this.to = to;
+            this.translations = translations;
+        }
+    }
+}
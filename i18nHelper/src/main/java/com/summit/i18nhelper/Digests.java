@@ -0,0 +1,51 @@
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.summit.i18nhelper;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * The MD5 digests the goals key their files by, of file contents and of
+ * texts encoded as UTF-8.
+ */
+final class Digests {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private Digests() {
+    }
+
+    /**
+     * @return a new MD5 digest
+     */
+    static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException ex) {
+            //every JRE is required to provide MD5
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * @return the 16 byte MD5 digest of {@code text} encoded as UTF-8
+     */
+    static byte[] md5(String text) {
+        return md5().digest(text.getBytes(UTF8));
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.summit.i18nhelper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The keys a properties file sets, without their values.
+ *
+ * Keys are kept in a sorted array and looked up by binary search, which
+ * takes a fraction of the memory of a loaded {@link java.util.Properties}.
+ */
+public class ExplicitKeyIndex {
+
+    /**
+     * An index with no keys.
+     */
+    public static final ExplicitKeyIndex EMPTY = new ExplicitKeyIndex(new String[0]);
+    private final String[] keys;
+
+    private ExplicitKeyIndex(String[] keys) {
+        this.keys = keys;
+    }
+
+    /**
+     * Reads the keys set by the first {@code length} bytes of a UTF-8
+     * properties file, values are skipped without being decoded.
+     */
+    public static ExplicitKeyIndex load(File file, long length) throws IOException {
+        if (length <= 0) {
+            return EMPTY;
+        }
+        List<String> keys = new ArrayList<String>();
+        PropertiesReader in = new PropertiesReader(new InputStreamReader(
+                new LimitedInputStream(new FileInputStream(file), length), "UTF-8"));
+        try {
+            while (in.next()) {
+                if (in.getKey() != null) {
+                    keys.add(in.getKey());
+                }
+            }
+        } finally {
+            in.close();
+        }
+        String[] sorted = keys.toArray(new String[keys.size()]);
+        Arrays.sort(sorted);
+        return new ExplicitKeyIndex(sorted);
+    }
+
+    /**
+     * @return true if the file sets {@code key}
+     */
+    public boolean contains(String key) {
+        return Arrays.binarySearch(keys, key) >= 0;
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * @return a rough estimate of the heap used by the index, in bytes
+     */
+    public long getMemoryEstimate() {
+        long bytes = 16 + 4L * keys.length;
+        for (String key : keys) {
+            //String and char[] headers plus the characters
+            bytes += 40 + 2L * key.length();
+        }
+        return bytes;
+    }
+
+    /**
+     * Ends the stream after a number of bytes.
+     */
+    private static final class LimitedInputStream extends FilterInputStream {
+
+        private long remaining;
+
+        LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = super.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
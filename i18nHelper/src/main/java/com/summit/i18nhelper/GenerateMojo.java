@@ -63,6 +63,26 @@ public class GenerateMojo extends AbstractMojo {
      * @required 
      */
     private FileSet[] bundleLocations;
+    /**
+     * Megabytes of heap the generator may hold for the locale files it
+     * writes: the keys they already set and the lines waiting to be written.
+     * Beyond it the files of the least recently used bundles are written out
+     * and released, then the lines of the current bundle are written out.
+     * 
+     * @parameter 
+     *  expression="${i18n.gen.memory}"
+     *  default-value="64"
+     */
+    private int genMemory;
+    /**
+     * Directory the metrics of the goal are written to, as
+     * i18nHelper-gen-metrics.json.
+     * 
+     * @parameter 
+     *  expression="${i18nHelper.metricsDirectory}"
+     *  default-value="${project.build.directory}"
+     */
+    private File metricsDirectory;
 
     @Override
     public void execute() throws MojoExecutionException, MojoFailureException {
@@ -70,11 +90,19 @@ public class GenerateMojo extends AbstractMojo {
         if (!genDir.exists()) {
             genDir.mkdirs();
         }
-        BundleGenerator bundleGenerator = new BundleGenerator(getLog());
+        Metrics metrics = new Metrics("gen");
+        BundleGenerator bundleGenerator = new BundleGenerator(getLog(), genMemory * 1024L * 1024L);
         try {
+            long started = System.nanoTime();
             bundleGenerator.generateResources(genDir, genInputFile, languageCodes, getLog());
+            metrics.addPhase("generate", started);
+            metrics.count(Metrics.KEYS, bundleGenerator.getKeysWritten());
+            metrics.count("files", bundleGenerator.getFilesWritten());
+            metrics.count(Metrics.BYTES_WRITTEN, bundleGenerator.getBytesWritten());
         } catch (IOException ex) {
             throw new MojoFailureException(ex, ex.getLocalizedMessage(), "Error generating resources.");
+        } finally {
+            metrics.report(metricsDirectory, getLog());
         }
     }
 }
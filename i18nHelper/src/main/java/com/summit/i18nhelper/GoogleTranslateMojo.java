@@ -15,23 +15,38 @@
  */
 package com.summit.i18nhelper;
 
+import com.google.api.AsyncHttpTransport;
+import com.google.api.Callback;
+import com.google.api.CallbackFuture;
 import com.google.api.GoogleAPI;
 import com.google.api.GoogleAPIException;
+import com.google.api.HttpTransport;
+import com.google.api.NioHttpTransport;
+import com.google.api.UrlConnectionTransport;
+import com.google.api.translate.AsyncTranslate;
 import com.google.api.translate.Language;
 import com.google.api.translate.Translate;
+import com.google.api.translate.TranslateV2;
 import java.io.*;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.net.URL;
 import java.nio.charset.Charset;
 import java.text.NumberFormat;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.LinkedList;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
@@ -41,6 +56,12 @@ import org.apache.maven.plugin.MojoFailureException;
  * This goal uses the Google Translation API to translate a document generated from
  * the pull goal.
  *
+ * Only keys without a translation are translated, unless {@code forceTranslation}
+ * is set. When {@code sourcesFile} is set the goal also keeps, in that file, a
+ * digest of the base value each translation was made from, and translates
+ * again the keys whose base value changed since. The file has to outlive the
+ * build, keep it next to the bundles and commit it with them.
+ *
  * @goal translate
  * @requiresOnline true
  * @phase process-sources
@@ -49,6 +70,12 @@ import org.apache.maven.plugin.MojoFailureException;
  */
 public class GoogleTranslateMojo extends AbstractMojo {
 
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    /**
+     * Lower case, like the {@code Integer.toHexString} escapes written so far.
+     */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
     /**
      * Location of the file.
      * @parameter 
@@ -78,7 +105,9 @@ public class GoogleTranslateMojo extends AbstractMojo {
      */
     private String defaultLocale;
     /**
-     * Force the translation even if one is provided
+     * Force the translation even if one is provided. Translations whose
+     * source changed are translated again without it, see
+     * {@code sourcesFile}.
      * @parameter 
      *  expression="${i18nHelper.forceTranslate}"
      *  default-value="false"
@@ -107,13 +136,26 @@ public class GoogleTranslateMojo extends AbstractMojo {
      */
     private String googleApiKey;
     /**
-     * Number of worker threads to use.
+     * Number of worker threads to use. In virtual and async execution modes,
+     * the number of requests in flight at once.
      * 
      * @parameter 
      *  expression="${translate.workers}"
      *  default-value="10"
      */
     private int workers;
+    /**
+     * How requests are sent: "threads" blocks a worker thread per request,
+     * "virtual" blocks a virtual thread per request on Java 21 and later and
+     * falls back to threads elsewhere, "async" sends them all from one I/O
+     * thread without blocking. The last two keep many requests in flight
+     * without as many platform threads.
+     * 
+     * @parameter 
+     *  expression="${translate.executionMode}"
+     *  default-value="threads"
+     */
+    private String executionMode;
     /**
      * Referrer for the call to google's api.
      * 
@@ -122,14 +164,180 @@ public class GoogleTranslateMojo extends AbstractMojo {
      *  default-value="http://www.summitsystemsinc.com"
      */
     private URL httpReferrer;
+    /**
+     * Translation service endpoint, defaults to Google Translate v2. Any
+     * server speaking the same protocol can be used, a local stub for
+     * example.
+     * 
+     * @parameter expression="${translate.endpoint}"
+     */
+    private URL endpoint;
+    /**
+     * Maximum number of HTTP connections open at once.
+     * 
+     * The JRE keeps at most {@code http.maxConnections} of them alive
+     * between requests, 5 unless Maven is started with
+     * {@code -Dhttp.maxConnections=n} in {@code MAVEN_OPTS}.
+     * 
+     * @parameter 
+     *  expression="${translate.maxConnections}"
+     *  default-value="10"
+     */
+    private int maxConnections;
+    /**
+     * HTTP connect timeout in milliseconds.
+     * 
+     * @parameter 
+     *  expression="${translate.connectTimeout}"
+     *  default-value="10000"
+     */
+    private int connectTimeout;
+    /**
+     * HTTP read timeout in milliseconds.
+     * 
+     * @parameter 
+     *  expression="${translate.readTimeout}"
+     *  default-value="30000"
+     */
+    private int readTimeout;
+    /**
+     * Sustained number of requests per second sent to the translation
+     * service, 0 for no limit.
+     * 
+     * @parameter 
+     *  expression="${translate.requestsPerSecond}"
+     *  default-value="0"
+     */
+    private double requestsPerSecond;
+    /**
+     * Number of times a request failing with a rate limit or server error is
+     * retried.
+     * 
+     * @parameter 
+     *  expression="${translate.maxRetries}"
+     *  default-value="5"
+     */
+    private int maxRetries;
+    /**
+     * Maximum number of requests a run may send, retries included. The build
+     * fails when it is reached, 0 for no limit.
+     * 
+     * @parameter 
+     *  expression="${translate.maxRequests}"
+     *  default-value="0"
+     */
+    private long maxRequests;
+    /**
+     * Maximum number of characters a run may send for translation. The build
+     * fails when it is reached, 0 for no limit.
+     * 
+     * @parameter 
+     *  expression="${translate.maxCharacters}"
+     *  default-value="0"
+     */
+    private long maxCharacters;
+    /**
+     * Translation memory shared between builds, translations found here are
+     * not sent to Google again.
+     * 
+     * @parameter 
+     *  expression="${translate.memory}"
+     *  default-value="${user.home}/.i18nHelper/translation-memory.dat"
+     */
+    private File translationMemory;
+    /**
+     * Maximum number of translations kept in the translation memory, 0
+     * disables it.
+     * 
+     * @parameter 
+     *  expression="${translate.memorySize}"
+     *  default-value="100000"
+     */
+    private int translationMemorySize;
+    /**
+     * Maximum number of distinct strings a worker sends to Google in one
+     * request.
+     * 
+     * @parameter 
+     *  expression="${translate.batchSize}"
+     *  default-value="50"
+     */
+    private int batchSize;
+    /**
+     * Directory the metrics of the goal are written to, as
+     * i18nHelper-translate-metrics.json.
+     * 
+     * @parameter 
+     *  expression="${i18nHelper.metricsDirectory}"
+     *  default-value="${project.build.directory}"
+     */
+    private File metricsDirectory;
+    /**
+     * Journal of the translations a run has done. A run that fails leaves it
+     * behind and the next one resumes from it rather than sending those
+     * translations again; it is deleted once the output file is written.
+     * 
+     * @parameter 
+     *  expression="${translate.journal}"
+     *  default-value="${project.build.directory}/i18nHelper-translate.journal"
+     */
+    private File journalFile;
+    /**
+     * The journal of the running execution, written by the thread applying
+     * the translations.
+     */
+    private TranslationJournal journal;
+    /**
+     * The translation memory's translator, the translations it fetched
+     * asynchronously are remembered by the thread applying them.
+     */
+    private CachingTranslate cache;
+    /**
+     * Digests of the base values the translations were made from, a
+     * translation whose base value changed since is translated again. Not
+     * set by default; to track sources, point it to a file kept between
+     * builds, outside of the build directory, and commit it with the bundles.
+     * 
+     * @parameter 
+     *  expression="${translate.sources}"
+     */
+    private File sourcesFile;
+    /**
+     * The sources of the running execution, recorded by the thread applying
+     * the translations, null if they aren't tracked.
+     */
+    private TranslationSources sources;
 
     @Override
     public void execute() throws MojoExecutionException, MojoFailureException {
-        BufferedReader in = null;
-        OutputStreamWriter out = null;
+        boolean async = "async".equals(executionMode);
+        if (!async && !"threads".equals(executionMode) && !"virtual".equals(executionMode)) {
+            throw new MojoExecutionException("Unknown executionMode " + executionMode + ", use threads, virtual or async.");
+        }
+        Writer out = null;
+        TranslationMemory memory = null;
+        ThrottlingTransport transport = null;
+        NioHttpTransport nioTransport = null;
+        //restored when the goal ends, other users of GoogleAPI in the JVM don't get this run's budget
+        HttpTransport previousTransport = null;
+        AsyncHttpTransport previousAsyncTransport = null;
+        Metrics metrics = new Metrics("translate");
 
-        final List<Future> runningTasks = new LinkedList<Future>();
-        ExecutorService executorService = Executors.newFixedThreadPool(workers);
+        ExecutorService executorService = null;
+        //caps the requests of virtual threads, a fixed pool is capped by its size
+        Semaphore permits = null;
+        if ("virtual".equals(executionMode)) {
+            executorService = newVirtualThreadPerTaskExecutor();
+            if (executorService == null) {
+                getLog().warn("Virtual threads need Java 21 or later, using " + workers + " worker threads.");
+            } else {
+                permits = new Semaphore(Math.max(1, workers));
+            }
+        }
+        if (executorService == null && !async) {
+            executorService = Executors.newFixedThreadPool(workers);
+        }
+        final Semaphore requestPermits = permits;
         if(languageCodes == null){
             languageCodes = Collections.EMPTY_LIST;
         }
@@ -147,133 +355,507 @@ public class GoogleTranslateMojo extends AbstractMojo {
             getLog().info("Using: " + lc);
         }
         try {
+            long started = System.nanoTime();
 
-            final Properties fullFile = new Properties();
-            fullFile.load(new InputStreamReader(new FileInputStream(fileToTranslate), Charset.forName("UTF-8")));
+            //read once, translations are filled into the lines and the file is written from them
+            PropertiesDocument document = PropertiesDocument.read(fileToTranslate, UTF8);
 
             GoogleAPI.setHttpReferrer(httpReferrer.toString());
             getLog().info("Using api key: " + googleApiKey);
             GoogleAPI.setKey(googleApiKey);
+            if (async) {
+                nioTransport = new NioHttpTransport(Math.max(1, maxConnections), connectTimeout, readTimeout);
+                transport = new ThrottlingTransport(nioTransport, new RateLimiter(requestsPerSecond, workers), workers, maxRetries);
+                previousAsyncTransport = GoogleAPI.getAsyncTransport();
+                GoogleAPI.setAsyncTransport(transport);
+            } else {
+                transport = new ThrottlingTransport(
+                        new UrlConnectionTransport(Math.max(1, maxConnections), connectTimeout, readTimeout),
+                        new RateLimiter(requestsPerSecond, workers), workers, maxRetries);
+            }
+            transport.setBudget(maxRequests, maxCharacters);
+            transport.setMetrics(metrics);
+            previousTransport = GoogleAPI.getTransport();
+            GoogleAPI.setTransport(transport);
 
-            int totalKeys = fullFile.size();
-            int currentKeyNum = 0;
-            for (final String key : fullFile.stringPropertyNames()) {
-                runningTasks.add(executorService.submit(new Runnable() {
-
-                    @Override
-                    public void run() {
-                        int pointLocation = key.lastIndexOf('.');
-
-                        if (pointLocation > 0) {
-                            String possibleCode = key.substring(pointLocation + 1);
-                            String baseKey = key.substring(0, pointLocation);
-                            if (languageCodes.contains(possibleCode)) {
-                                String localized = fullFile.getProperty(key);
-                                if (localized == null || localized.trim().length() == 0 || forceTranslation) {
-                                    String baseValue = fullFile.getProperty(baseKey);
-                                    getLog().debug("Translating \"" + baseValue + "\" to " + possibleCode);
-                                    //String translation = GoogleTranslate.translate(baseValue, defaultLocale, possibleCode, googleApiKey);
-                                    try {
-                                        String translation = Translate.DEFAULT.execute(baseValue, Language.fromString(defaultLocale), Language.fromString(possibleCode));
-                                        //TODO i don't know enough about unicode to make this prettier
-                                        translation = nativeToAscii(translation);
-                                        fullFile.setProperty(key, translation);
-                                        getLog().debug("Translated \"" + baseValue + "\" to \"" + translation + "\" (" + possibleCode + ")");
-                                    } catch (GoogleAPIException ex) {
-                                        throw new RuntimeException(ex);
-                                    }
-                                }
+            Translate translate = Translate.DEFAULT;
+            String engine = translate.getClass().getSimpleName();
+            if (endpoint != null) {
+                getLog().info("Using endpoint: " + endpoint);
+                translate = new TranslateV2(endpoint.toString());
+                //keep translations from other servers out of the memory's Google entries
+                engine = engine + "@" + endpoint;
+            }
+            if (translationMemory != null && translationMemorySize > 0) {
+                getLog().info("Using translation memory: " + translationMemory);
+                memory = new TranslationMemory(translationMemory, translationMemorySize);
+                cache = new CachingTranslate(translate, memory, engine);
+                translate = cache;
+            }
+            final Translate translator = translate;
+            if (async && !(translator instanceof AsyncTranslate)) {
+                throw new MojoExecutionException(translator.getClass().getName() + " cannot translate asynchronously.");
+            }
+            journal = new TranslationJournal(journalFile);
+            if (journal.getRecordedCount() > 0) {
+                getLog().info("Resuming from " + journal.getRecordedCount() + " translations in " + journalFile);
+            }
+            int resumed = 0;
+            sources = loadTranslationSources();
+            int stale = 0;
+
+            //merge identical strings so each one is only translated once per locale
+            final LocaleIndex locales = new LocaleIndex(languageCodes);
+            TranslationWorkSet<PropertiesDocument.Line> workSet = new TranslationWorkSet<PropertiesDocument.Line>(locales);
+            for (PropertiesDocument.Line line : document.getLines()) {
+                String key = line.getKey();
+                if (key == null || document.getProperty(key) != line) {
+                    //not a property, or redefined further down
+                    continue;
+                }
+                int pointLocation = key.lastIndexOf('.');
+
+                if (pointLocation > 0) {
+                    int locale = locales.indexOf(key, pointLocation + 1, key.length());
+                    if (locale >= 0) {
+                        String localized = line.getValue();
+                        boolean missing = localized == null || localized.trim().length() == 0;
+                        PropertiesDocument.Line base = document.getProperty(key.substring(0, pointLocation));
+                        if (base == null) {
+                            if (missing || forceTranslation) {
+                                getLog().debug("No base value for " + key + ", skipping.");
+                            }
+                        } else if (!missing && !forceTranslation && (sources == null || !sources.isChanged(key, base.getValue()))) {
+                            //up to date, or translated before its source was tracked
+                            trackSource(key, base.getValue());
+                        } else {
+                            if (!missing && !forceTranslation) {
+                                getLog().debug("The base value of " + key + " changed, translating it again.");
+                                stale++;
+                            }
+                            if (sources != null) {
+                                //replaced once a translation is applied, a failed one leaves the key stale
+                                sources.keep(key);
+                            }
+                            String translation = journal.getTranslation(key, locales.getCode(locale), base.getValue());
+                            if (translation != null) {
+                                //done by the run that failed
+                                line.setRawValue(nativeToAscii(translation));
+                                trackSource(key, base.getValue());
+                                resumed++;
+                            } else {
+                                workSet.add(locale, base.getValue(), line);
                             }
                         }
                     }
-                }));
+                }
             }
+            if (resumed > 0) {
+                getLog().info("Resumed " + resumed + " translations from the journal");
+                metrics.count("resumed", resumed);
+            }
+            if (stale > 0) {
+                getLog().info(stale + " translations are out of date, their base value changed.");
+                metrics.count("stale", stale);
+            }
+            if (workSet.getKeyCount() > 0) {
+                getLog().info("Translating " + workSet.getKeyCount() + " keys as " + workSet.getUniqueCount()
+                        + " unique strings (dedup ratio " + NumberFormat.getNumberInstance().format(
+                        workSet.getKeyCount() / (double) workSet.getUniqueCount()) + ")");
+            }
+
+            final Language from = Language.fromString(defaultLocale);
+            List<TranslationWorkSet.Batch<PropertiesDocument.Line>> batches = workSet.batches(Math.max(1, batchSize));
+            int totalBatches = batches.size();
+            metrics.count(Metrics.KEYS, workSet.getKeyCount());
+            metrics.count("uniqueStrings", workSet.getUniqueCount());
+            metrics.count("batches", totalBatches);
+            metrics.addPhase("parse", started);
+            started = System.nanoTime();
+            //a few batches per worker are queued or in flight, the rest wait in the list
+            int maxPending = 2 * Math.max(1, workers);
+            final BlockingQueue<Future<TranslationWorkSet.Batch<PropertiesDocument.Line>>> finished
+                    = new LinkedBlockingQueue<Future<TranslationWorkSet.Batch<PropertiesDocument.Line>>>();
+            CompletionService<TranslationWorkSet.Batch<PropertiesDocument.Line>> completionService = async ? null
+                    : new ExecutorCompletionService<TranslationWorkSet.Batch<PropertiesDocument.Line>>(executorService, finished);
+            Iterator<TranslationWorkSet.Batch<PropertiesDocument.Line>> pending = batches.iterator();
+            int running = 0;
+            int completed = 0;
+            while (completed < totalBatches) {
+                while (running < maxPending && pending.hasNext()) {
+                    final TranslationWorkSet.Batch<PropertiesDocument.Line> batch = pending.next();
+                    running++;
+                    if (async) {
+                        final CallbackFuture<TranslationWorkSet.Batch<PropertiesDocument.Line>> task
+                                = translateAsync((AsyncTranslate) translator, batch, from, locales.getLanguage(batch.getLocaleId()));
+                        task.addCallback(new Callback<Object>() {
+
+                            @Override
+                            public void completed(Object result) {
+                                finished.add(task);
+                            }
+
+                            @Override
+                            public void failed(Exception ex) {
+                                finished.add(task);
+                            }
+                        });
+                        continue;
+                    }
+                    completionService.submit(new Callable<TranslationWorkSet.Batch<PropertiesDocument.Line>>() {
+
+                        @Override
+                        public TranslationWorkSet.Batch<PropertiesDocument.Line> call() throws GoogleAPIException, InterruptedException {
+                            String[] values = batch.getValues();
+                            getLog().debug("Translating " + values.length + " strings to " + batch.getLocale());
+                            if (requestPermits != null) {
+                                requestPermits.acquire();
+                            }
+                            try {
+                                batch.setTranslations(translator.execute(values, from, locales.getLanguage(batch.getLocaleId())));
+                            } finally {
+                                if (requestPermits != null) {
+                                    requestPermits.release();
+                                }
+                            }
+                            return batch;
+                        }
+                    });
+                }
 
-            //wait for these to finish...
-            for (Future task : runningTasks) {
-                currentKeyNum++;
                 try {
-                    task.get();
+                    //whichever batch finishes first, only this thread writes to the document
+                    applyTranslations(finished.take().get());
                 } catch (InterruptedException ex) {
                     Thread.currentThread().interrupt();
+                    throw new MojoExecutionException("Interrupted while translating.");
                 } catch (ExecutionException ex) {
+                    BudgetExceededException budget = budgetExceeded(ex.getCause());
+                    if (budget != null) {
+                        throw new MojoFailureException(budget, budget.getMessage(),
+                                "The translation budget was exhausted, raise maxRequests or maxCharacters.");
+                    }
                     throw new MojoExecutionException(ex.getCause(), ex.getCause().getMessage(), "Error doing translation.");
                 }
-                if (currentKeyNum % 10 == 0) {
-                    getLog().info(NumberFormat.getPercentInstance().format(currentKeyNum / (double) totalKeys));
+                running--;
+                completed++;
+                if (completed % 10 == 0) {
+                    getLog().info(NumberFormat.getPercentInstance().format(completed / (double) totalBatches)
+                            + " (" + completed + "/" + totalBatches + " batches)");
                 }
             }
 
-            in = new BufferedReader(new InputStreamReader(new FileInputStream(fileToTranslate), Charset.forName("UTF-8")));
-            out = new OutputStreamWriter(new FileOutputStream(outFile), Charset.forName("UTF-8"));
-            getLog().debug(fileToTranslate.getPath());
-
-
-
-            String line;
-            while ((line = in.readLine()) != null) {
-                if (line.startsWith("#")) {
-                    out.write(line + "\r\n");
-                    continue;
-                }
-                if (line.trim().length() == 0) {
-                    out.write(line + "\r\n");
-                    continue;
-                }
-
-                int splitLocation = line.indexOf("=");
-                if (splitLocation > 0) {
-                    String splitLine[] = line.split("=");
-                    final String propertyName = splitLine[0];
-                    out.write(propertyName);
-                    out.write("=");
-                    out.write(fullFile.getProperty(propertyName));
-                    out.write("\r\n");
-                } else {
-                    //there was no "=" so just write the line back out... Garbage in Garbage out...
-                    out.write(line + "\r\n");
-                    continue;
-                }
+            metrics.addPhase("translate", started);
+            started = System.nanoTime();
 
-            }
+            getLog().debug("Writing " + outFile.getPath());
+            out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outFile), UTF8));
+            document.write(out);
+            out.close();
+            //nothing left to resume
+            journal.delete();
+            journal = null;
+            saveTranslationSources();
+            metrics.count(Metrics.BYTES_WRITTEN, outFile.length());
+            metrics.addPhase("write", started);
         } catch (FileNotFoundException ex) {
             throw new MojoFailureException(ex, ex.getLocalizedMessage(), fileToTranslate + " was not found.");
         } catch (IOException ex) {
             throw new MojoExecutionException(ex, ex.getLocalizedMessage(), "Error processing the input file.");
         } finally {
+            //stops the remaining work if a translation failed
+            if (executorService != null) {
+                executorService.shutdownNow();
+            }
+            if (previousTransport != null) {
+                GoogleAPI.setTransport(previousTransport);
+            }
+            if (nioTransport != null) {
+                GoogleAPI.setAsyncTransport(previousAsyncTransport);
+                transport.close();
+                nioTransport.close();
+            }
+            if (transport != null) {
+                getLog().info("Sent " + transport.getRequests() + " requests (" + transport.getCharacters() + " characters), "
+                        + transport.getRetries() + " retries, " + transport.getThrottled() + " rate limited");
+                metrics.count("requests", transport.getRequests());
+                metrics.count("characters", transport.getCharacters());
+                metrics.count("retries", transport.getRetries());
+                metrics.count("rateLimited", transport.getThrottled());
+            }
             try {
-                if (in != null) {
-                    in.close();
-                }
                 if (out != null) {
                     out.close();
                 }
             } catch (Exception ex) {
             }
+            if (memory != null) {
+                metrics.count("cacheHits", memory.getHits());
+                metrics.count("cacheMisses", memory.getMisses());
+                if (cache != null) {
+                    cache.rememberFetched();
+                    cache = null;
+                }
+                closeTranslationMemory(memory);
+            }
+            if (journal != null) {
+                closeJournal();
+            }
+            metrics.report(metricsDirectory, getLog());
+        }
+    }
+
+    /**
+     * Java 21's {@code Executors.newVirtualThreadPerTaskExecutor()}, called
+     * by reflection as the plugin is built for older JVMs.
+     *
+     * @return null if virtual threads are not available
+     */
+    private ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (NoSuchMethodException ex) {
+            return null;
+        } catch (IllegalAccessException ex) {
+            return null;
+        } catch (InvocationTargetException ex) {
+            //a preview feature that isn't enabled, before Java 21
+            getLog().debug("Virtual threads are not available", ex.getCause());
+            return null;
+        }
+    }
+
+    /**
+     * Sends a batch without waiting for it.
+     *
+     * @return completed with the batch once its translations are stored in it
+     */
+    private CallbackFuture<TranslationWorkSet.Batch<PropertiesDocument.Line>> translateAsync(AsyncTranslate translator,
+            final TranslationWorkSet.Batch<PropertiesDocument.Line> batch, Language from, Language to) {
+        final CallbackFuture<TranslationWorkSet.Batch<PropertiesDocument.Line>> translated
+                = new CallbackFuture<TranslationWorkSet.Batch<PropertiesDocument.Line>>();
+        String[] values = batch.getValues();
+        getLog().debug("Translating " + values.length + " strings to " + batch.getLocale());
+        translator.executeAsync(values, from, to).addCallback(new Callback<String[]>() {
+
+            @Override
+            public void completed(String[] translations) {
+                try {
+                    batch.setTranslations(translations);
+                    translated.complete(batch);
+                } catch (RuntimeException ex) {
+                    translated.fail(ex);
+                }
+            }
+
+            @Override
+            public void failed(Exception ex) {
+                translated.fail(ex);
+            }
+        });
+        return translated;
+    }
+
+    /**
+     * Writes the translations of a finished batch to the lines that need them.
+     */
+    private void applyTranslations(TranslationWorkSet.Batch<PropertiesDocument.Line> batch) {
+        if (cache != null) {
+            //off the I/O thread that completed the batch
+            cache.rememberFetched();
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            //TODO i don't know enough about unicode to make this prettier
+            String translation = nativeToAscii(batch.getTranslation(i));
+            for (PropertiesDocument.Line line : batch.getTargets(i)) {
+                line.setRawValue(translation);
+                if (translation != null) {
+                    trackSource(line.getKey(), batch.getValue(i));
+                }
+                record(line.getKey(), batch.getLocale(), batch.getValue(i), batch.getTranslation(i));
+            }
+            getLog().debug("Translated \"" + batch.getValue(i) + "\" to \"" + translation + "\" (" + batch.getLocale() + ")");
+        }
+    }
+
+    /**
+     * Journals a translation, a journal that cannot be written is given up
+     * without failing the run.
+     */
+    private void record(String key, String locale, String source, String translation) {
+        if (journal == null || translation == null) {
+            return;
+        }
+        try {
+            journal.append(key, locale, source, translation);
+        } catch (IOException ex) {
+            getLog().warn("Translations can't be journaled to " + journalFile + ", a failed run will start over: "
+                    + ex.getLocalizedMessage());
+            closeJournal();
+        }
+    }
+
+    /**
+     * @return the budget exception that caused a translation to fail, null
+     * if it failed for another reason
+     */
+    private static BudgetExceededException budgetExceeded(Throwable cause) {
+        for (Throwable t = cause; t != null; t = t.getCause()) {
+            if (t instanceof BudgetExceededException) {
+                return (BudgetExceededException) t;
+            }
+        }
+        return null;
+    }
+
+    private void closeJournal() {
+        try {
+            journal.close();
+            if (journal.getWrittenCount() > 0) {
+                getLog().info("Kept " + journal.getWrittenCount() + " translations in " + journalFile
+                        + ", the next run resumes from them.");
+            }
+        } catch (IOException ex) {
+            getLog().warn("Error closing the translation journal " + journalFile, ex);
+        }
+        journal = null;
+    }
+
+    /**
+     * Records that the translation of {@code key} was made from
+     * {@code source}, if sources are tracked.
+     */
+    private void trackSource(String key, String source) {
+        if (sources != null) {
+            sources.put(key, source);
+        }
+    }
+
+    /**
+     * @return the sources saved by the last run, null if they aren't tracked
+     */
+    private TranslationSources loadTranslationSources() {
+        if (sourcesFile == null) {
+            return null;
+        }
+        try {
+            return TranslationSources.load(sourcesFile);
+        } catch (IOException ex) {
+            getLog().warn("Ignoring unreadable translation sources " + sourcesFile + ": " + ex.getMessage());
+            return new TranslationSources();
+        }
+    }
+
+    /**
+     * Saves the sources once the translations are written, a failure only
+     * means the next run translates the keys found stale this time again.
+     */
+    private void saveTranslationSources() {
+        if (sources == null) {
+            return;
+        }
+        try {
+            if (sources.save(sourcesFile, languageCodes)) {
+                getLog().debug("Saved the translation sources to " + sourcesFile);
+            }
+        } catch (IOException ex) {
+            getLog().warn("Translation sources could not be saved to " + sourcesFile + ": " + ex.getLocalizedMessage());
+        }
+        sources = null;
+    }
+
+    private void closeTranslationMemory(TranslationMemory memory) {
+        getLog().info("Translation memory: " + memory.getHits() + " hits, " + memory.getMisses() + " misses, "
+                + memory.size() + " entries");
+        if (memory.getPersistFailure() != null) {
+            getLog().warn("Translations could not be saved to " + translationMemory + ": "
+                    + memory.getPersistFailure().getLocalizedMessage());
+        }
+        try {
+            memory.close();
+        } catch (IOException ex) {
+            getLog().warn("Error closing the translation memory " + translationMemory, ex);
         }
     }
 
     /**
      * Converts given CharSequence into ASCII String.
+     *
+     * Characters above {@code 0x7E} become {@code \\uxxxx} escapes, a
+     * supplementary character is escaped as its two surrogates like
+     * {@link java.util.Properties} expects. A sequence that is already ASCII
+     * is returned as is, without copying when it is a String.
      */
     public static String nativeToAscii(CharSequence cs) {
         if (cs == null) {
             return null;
         }
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < cs.length(); i++) {
-            char c = cs.charAt(i);
-            if (c <= 0x7E) {
-                sb.append(c);
-            } else {
-                sb.append("\\u");
-                String hex = Integer.toHexString(c);
-                for (int j = hex.length(); j < 4; j++) {
-                    sb.append('0');
-                }
-                sb.append(hex);
+        int length = cs.length();
+        int first = 0;
+        while (first < length && cs.charAt(first) <= 0x7E) {
+            first++;
+        }
+        if (first == length) {
+            return cs.toString();
+        }
+        int escaped = 0;
+        for (int i = first; i < length; i++) {
+            if (cs.charAt(i) > 0x7E) {
+                escaped++;
             }
         }
+        StringBuilder sb = new StringBuilder(length + 5 * escaped);
+        sb.append(cs, 0, first);
+        try {
+            escape(cs, first, sb);
+        } catch (IOException ex) {
+            //StringBuilder doesn't throw it
+            throw new IllegalStateException(ex);
+        }
         return sb.toString();
     }
+
+    /**
+     * Writes {@code cs} to {@code out} the way {@link #nativeToAscii(CharSequence)}
+     * converts it, without creating any intermediate object when {@code out}
+     * is a StringBuilder or a Writer.
+     */
+    public static void nativeToAscii(CharSequence cs, Appendable out) throws IOException {
+        escape(cs, 0, out);
+    }
+
+    private static void escape(CharSequence cs, int from, Appendable out) throws IOException {
+        int length = cs.length();
+        int runStart = from;
+        for (int i = from; i < length; i++) {
+            char c = cs.charAt(i);
+            if (c > 0x7E) {
+                appendRun(cs, runStart, i, out);
+                appendEscape(c, out);
+                runStart = i + 1;
+            }
+        }
+        appendRun(cs, runStart, length, out);
+    }
+
+    private static void appendRun(CharSequence cs, int start, int end, Appendable out) throws IOException {
+        if (start == end) {
+            return;
+        }
+        if (out instanceof Writer && cs instanceof String) {
+            //Writer.append would cut out a subSequence first
+            ((Writer) out).write((String) cs, start, end - start);
+        } else {
+            out.append(cs, start, end);
+        }
+    }
+
+    private static void appendEscape(char c, Appendable out) throws IOException {
+        out.append('\\').append('u')
+                .append(HEX_DIGITS[(c >> 12) & 0xF])
+                .append(HEX_DIGITS[(c >> 8) & 0xF])
+                .append(HEX_DIGITS[(c >> 4) & 0xF])
+                .append(HEX_DIGITS[c & 0xF]);
+    }
 }
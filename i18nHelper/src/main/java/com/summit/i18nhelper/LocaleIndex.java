@@ -0,0 +1,133 @@
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.summit.i18nhelper;
+
+import com.google.api.translate.Language;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The configured language codes, each given a dense id from 0 to
+ * {@code size() - 1}.
+ *
+ * Codes can be looked up straight from the suffix of a {@code key.locale}
+ * property key, without cutting it out into a new string first, so the
+ * per-key check allocates nothing and doesn't depend on the number of
+ * locales.
+ */
+public class LocaleIndex {
+
+    private final String[] codes;
+    private final Language[] languages;
+    /**
+     * Open addressing table of id + 1, 0 marks a free slot.
+     */
+    private final int[] table;
+    private final int mask;
+
+    /**
+     * @param codes the language codes, duplicates are ignored
+     */
+    public LocaleIndex(Collection<String> codes) {
+        int capacity = Integer.highestOneBit(Math.max(4, codes.size() * 4) - 1) << 1;
+        table = new int[capacity];
+        mask = capacity - 1;
+        List<String> unique = new ArrayList<String>(codes.size());
+        for (String code : codes) {
+            if (code != null && indexOf(code, 0, code.length(), unique) < 0) {
+                unique.add(code);
+                int slot = hash(code, 0, code.length()) & mask;
+                while (table[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = unique.size();
+            }
+        }
+        this.codes = unique.toArray(new String[unique.size()]);
+        languages = new Language[this.codes.length];
+        for (int i = 0; i < languages.length; i++) {
+            languages[i] = Language.fromString(this.codes[i]);
+        }
+    }
+
+    /**
+     * @return the id of {@code code}, or -1 if it isn't one of the codes
+     */
+    public int indexOf(String code) {
+        return indexOf(code, 0, code.length());
+    }
+
+    /**
+     * Looks up the code made of the characters of {@code s} from
+     * {@code start} to {@code end}.
+     *
+     * @return its id, or -1 if it isn't one of the codes
+     */
+    public int indexOf(String s, int start, int end) {
+        return indexOf(s, start, end, null);
+    }
+
+    /**
+     * @return true if {@code code} is one of the codes
+     */
+    public boolean contains(String code) {
+        return indexOf(code) >= 0;
+    }
+
+    /**
+     * @return the code with the given id
+     */
+    public String getCode(int id) {
+        return codes[id];
+    }
+
+    /**
+     * @return the language of the code with the given id, or null if the
+     * translator doesn't know it
+     */
+    public Language getLanguage(int id) {
+        return languages[id];
+    }
+
+    /**
+     * @return the number of distinct codes
+     */
+    public int size() {
+        return codes.length;
+    }
+
+    private int indexOf(String s, int start, int end, List<String> building) {
+        int length = end - start;
+        for (int slot = hash(s, start, end) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            int id = table[slot] - 1;
+            String code = building == null ? codes[id] : building.get(id);
+            if (code.length() == length && s.regionMatches(start, code, 0, length)) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    private static int hash(String s, int start, int end) {
+        //String.hashCode of the region, spread so short codes use the low bits too
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + s.charAt(i);
+        }
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.summit.i18nhelper;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.NumberFormat;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import org.apache.maven.plugin.logging.Log;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Timings and counters of one goal execution, reported as a one line
+ * summary and a JSON file.
+ *
+ * Phases are the time spent in each step of the goal. A phase run by
+ * several threads at once adds up the time of every thread, so it can be
+ * longer than the goal. Counters and latencies can be recorded from any
+ * thread.
+ */
+public class Metrics {
+
+    /**
+     * Counter of the keys the goal processed, the basis of its throughput.
+     */
+    public static final String KEYS = "keys";
+    /**
+     * Counter of the bytes the goal wrote to its output files.
+     */
+    public static final String BYTES_WRITTEN = "bytesWritten";
+    private final String goal;
+    private final long started = System.nanoTime();
+    private long finished;
+    private final Map<String, Long> phases = new LinkedHashMap<String, Long>();
+    private final Map<String, Long> counters = new LinkedHashMap<String, Long>();
+    private final Map<String, Histogram> latencies = new LinkedHashMap<String, Histogram>();
+
+    /**
+     * Starts measuring a goal.
+     */
+    public Metrics(String goal) {
+        this.goal = goal;
+    }
+
+    /**
+     * Adds time to a phase.
+     *
+     * @param since when the time started, from {@link System#nanoTime()}
+     */
+    public synchronized void addPhase(String phase, long since) {
+        long elapsed = System.nanoTime() - since;
+        Long total = phases.get(phase);
+        phases.put(phase, total == null ? elapsed : total + elapsed);
+    }
+
+    /**
+     * Adds to a counter.
+     */
+    public synchronized void count(String counter, long n) {
+        Long total = counters.get(counter);
+        counters.put(counter, total == null ? n : total + n);
+    }
+
+    /**
+     * @return the value of a counter, 0 if nothing was counted
+     */
+    public synchronized long getCount(String counter) {
+        Long total = counters.get(counter);
+        return total == null ? 0 : total;
+    }
+
+    /**
+     * Records how long one operation, such as an HTTP request, took.
+     *
+     * @param since when it started, from {@link System#nanoTime()}
+     */
+    public synchronized void recordLatency(String name, long since) {
+        Histogram histogram = latencies.get(name);
+        if (histogram == null) {
+            histogram = new Histogram();
+            latencies.put(name, histogram);
+        }
+        histogram.record(System.nanoTime() - since);
+    }
+
+    /**
+     * Stops the goal's clock, the first call counts.
+     */
+    public synchronized void finish() {
+        if (finished == 0) {
+            finished = System.nanoTime();
+        }
+    }
+
+    /**
+     * @return the time the goal took, up to now if it isn't finished
+     */
+    public synchronized long getWallNanos() {
+        return (finished == 0 ? System.nanoTime() : finished) - started;
+    }
+
+    /**
+     * Finishes, logs the summary and writes the JSON report.
+     *
+     * @param directory where {@code i18nHelper-<goal>-metrics.json} is
+     * written, null to only log the summary
+     */
+    public void report(File directory, Log log) {
+        finish();
+        log.info(getSummary());
+        if (directory == null) {
+            return;
+        }
+        File file = new File(directory, "i18nHelper-" + goal + "-metrics.json");
+        try {
+            write(file);
+        } catch (IOException ex) {
+            log.warn("Could not write the metrics to " + file + ": " + ex.getMessage());
+        }
+    }
+
+    /**
+     * @return a one line summary, for example
+     * {@code pull: 1,000 keys in 0.25 s (4,000 keys/s), scan 10 ms, parse 150 ms, 48 KB written}
+     */
+    public synchronized String getSummary() {
+        NumberFormat number = NumberFormat.getNumberInstance(Locale.ENGLISH);
+        number.setMaximumFractionDigits(1);
+        NumberFormat secondsFormat = NumberFormat.getNumberInstance(Locale.ENGLISH);
+        secondsFormat.setMaximumFractionDigits(2);
+        long keys = getCount(KEYS);
+        double seconds = getWallNanos() / 1e9;
+        StringBuilder sb = new StringBuilder(goal).append(": ");
+        sb.append(number.format(keys)).append(" keys in ").append(secondsFormat.format(seconds)).append(" s");
+        if (seconds > 0) {
+            sb.append(" (").append(number.format(Math.round(keys / seconds))).append(" keys/s)");
+        }
+        for (Map.Entry<String, Long> phase : phases.entrySet()) {
+            sb.append(", ").append(phase.getKey()).append(' ').append(phase.getValue() / 1000000).append(" ms");
+        }
+        for (Map.Entry<String, Histogram> latency : latencies.entrySet()) {
+            Histogram histogram = latency.getValue();
+            sb.append(", ").append(latency.getKey()).append(' ').append(histogram.count)
+                    .append(" x p50 ").append(histogram.percentile(0.5))
+                    .append("/p99 ").append(histogram.percentile(0.99)).append(" ms");
+        }
+        for (Map.Entry<String, Long> counter : counters.entrySet()) {
+            if (!KEYS.equals(counter.getKey()) && !BYTES_WRITTEN.equals(counter.getKey()) && counter.getValue() != 0) {
+                sb.append(", ").append(counter.getKey()).append(' ').append(number.format(counter.getValue()));
+            }
+        }
+        sb.append(", ").append(number.format(getCount(BYTES_WRITTEN) / 1024.0)).append(" KB written");
+        return sb.toString();
+    }
+
+    /**
+     * @return everything measured, times in milliseconds
+     */
+    public synchronized JSONObject toJSON() {
+        try {
+            JSONObject json = new JSONObject();
+            json.put("goal", goal);
+            long wallNanos = getWallNanos();
+            json.put("wallMillis", wallNanos / 1000000);
+            json.put(KEYS, getCount(KEYS));
+            json.put("keysPerSecond", wallNanos == 0 ? 0 : getCount(KEYS) * 1e9 / wallNanos);
+            json.put(BYTES_WRITTEN, getCount(BYTES_WRITTEN));
+            JSONObject phaseMillis = new JSONObject();
+            for (Map.Entry<String, Long> phase : phases.entrySet()) {
+                phaseMillis.put(phase.getKey(), phase.getValue() / 1000000);
+            }
+            json.put("phases", phaseMillis);
+            JSONObject counterValues = new JSONObject();
+            for (Map.Entry<String, Long> counter : counters.entrySet()) {
+                counterValues.put(counter.getKey(), counter.getValue());
+            }
+            json.put("counters", counterValues);
+            JSONObject latencyHistograms = new JSONObject();
+            for (Map.Entry<String, Histogram> latency : latencies.entrySet()) {
+                latencyHistograms.put(latency.getKey(), latency.getValue().toJSON());
+            }
+            json.put("latencies", latencyHistograms);
+            return json;
+        } catch (JSONException ex) {
+            //only thrown for non-finite numbers
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Writes {@link #toJSON()} to {@code file}, replacing it.
+     */
+    public void write(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.exists()) {
+            parent.mkdirs();
+        }
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            out.write(toJSON().toString(2));
+            out.write("\n");
+        } catch (JSONException ex) {
+            throw new IllegalStateException(ex);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Counts latencies in buckets of 1, 2 and 5 times powers of ten
+     * milliseconds, percentiles are given as the upper bound of their bucket.
+     */
+    private static final class Histogram {
+
+        private static final long[] BOUNDS_MILLIS = {
+            1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 20000, 50000, Long.MAX_VALUE
+        };
+        private final long[] buckets = new long[BOUNDS_MILLIS.length];
+        private long count;
+        private long totalNanos;
+        private long maxNanos;
+
+        void record(long nanos) {
+            long millis = nanos / 1000000;
+            int bucket = 0;
+            while (millis >= BOUNDS_MILLIS[bucket]) {
+                bucket++;
+            }
+            buckets[bucket]++;
+            count++;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+        }
+
+        /**
+         * @return the bound under which {@code fraction} of the latencies
+         * are, in milliseconds, capped by the largest one
+         */
+        long percentile(double fraction) {
+            long rank = (long) Math.ceil(fraction * count);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank && seen > 0) {
+                    return Math.min(BOUNDS_MILLIS[i], (maxNanos + 999999) / 1000000);
+                }
+            }
+            return 0;
+        }
+
+        JSONObject toJSON() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("count", count);
+            json.put("meanMillis", count == 0 ? 0 : totalNanos / 1e6 / count);
+            json.put("maxMillis", maxNanos / 1e6);
+            json.put("p50Millis", percentile(0.5));
+            json.put("p90Millis", percentile(0.9));
+            json.put("p99Millis", percentile(0.99));
+            JSONObject counts = new JSONObject();
+            for (int i = 0; i < buckets.length; i++) {
+                if (buckets[i] > 0) {
+                    counts.put(BOUNDS_MILLIS[i] == Long.MAX_VALUE ? "inf" : "<" + BOUNDS_MILLIS[i], buckets[i]);
+                }
+            }
+            json.put("buckets", counts);
+            return json;
+        }
+    }
+}
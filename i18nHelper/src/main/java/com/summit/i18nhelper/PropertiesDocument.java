@@ -0,0 +1,161 @@
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.summit.i18nhelper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A properties file held as its lines, so values can be replaced and the
+ * file written back without re-reading it.
+ *
+ * Lines that are not changed are written back exactly as they were read.
+ */
+public class PropertiesDocument {
+
+    private final List<Line> lines = new ArrayList<Line>();
+    private final Map<String, Line> properties = new HashMap<String, Line>();
+
+    /**
+     * Reads a whole properties file.
+     */
+    public static PropertiesDocument read(File file, Charset charset) throws IOException {
+        PropertiesDocument document = new PropertiesDocument();
+        PropertiesReader reader = new PropertiesReader(new InputStreamReader(new FileInputStream(file), charset));
+        try {
+            while (reader.next()) {
+                Line line = new Line(reader.getRaw(), reader.getKey(), reader.getValueStart());
+                document.lines.add(line);
+                if (line.key != null) {
+                    //like Properties, the last definition of a key wins
+                    document.properties.put(line.key, line);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return document;
+    }
+
+    /**
+     * @return all the lines, in file order
+     */
+    public List<Line> getLines() {
+        return Collections.unmodifiableList(lines);
+    }
+
+    /**
+     * @return the line defining {@code key}, or null
+     */
+    public Line getProperty(String key) {
+        return properties.get(key);
+    }
+
+    /**
+     * Writes every line to {@code out}, each followed by {@code \r\n}.
+     */
+    public void write(Writer out) throws IOException {
+        for (Line line : lines) {
+            line.writeTo(out);
+            out.write(PropertiesReader.LINE_BREAK);
+        }
+    }
+
+    /**
+     * One logical line of the file.
+     */
+    public static class Line {
+
+        private final String raw;
+        private final String key;
+        private final int valueStart;
+        private String rawValue;
+
+        Line(String raw, String key, int valueStart) {
+            this.raw = raw;
+            this.key = key;
+            this.valueStart = valueStart;
+        }
+
+        /**
+         * @return the unescaped key, or null for comments and blank lines
+         */
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * @return the unescaped value, or null for comments and blank lines
+         */
+        public String getValue() {
+            if (key == null) {
+                return null;
+            }
+            if (rawValue != null) {
+                return PropertiesReader.unescape(rawValue, 0, rawValue.length());
+            }
+            return PropertiesReader.unescape(raw, valueStart, raw.length());
+        }
+
+        /**
+         * @return the line as it was read
+         */
+        public String getRaw() {
+            return raw;
+        }
+
+        /**
+         * Replaces the value, {@code rawValue} is written as is and must
+         * already be escaped.
+         */
+        public void setRawValue(String rawValue) {
+            if (key == null) {
+                throw new IllegalStateException("Not a property: " + raw);
+            }
+            this.rawValue = rawValue;
+        }
+
+        void writeTo(Writer out) throws IOException {
+            if (rawValue == null) {
+                out.write(raw);
+            } else {
+                out.write(raw, 0, valueStart);
+                if (valueStart == raw.length() && !endsWithSeparator()) {
+                    //a bare key, give it a separator before the new value
+                    out.write('=');
+                }
+                out.write(rawValue);
+            }
+        }
+
+        private boolean endsWithSeparator() {
+            if (valueStart == 0) {
+                return false;
+            }
+            char last = raw.charAt(valueStart - 1);
+            return last == '=' || last == ':' || last == ' ' || last == '\t' || last == '\f';
+        }
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.summit.i18nhelper;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Streaming tokenizer for properties files.
+ *
+ * Reads one logical line per call to {@link #next()} and follows the rules
+ * of {@link java.util.Properties#load(Reader)} for separators, continuation
+ * lines and escapes. Unlike {@code Properties} it keeps comments, blank lines
+ * and the raw text of every line, so a file can be rewritten without
+ * disturbing what it doesn't change.
+ */
+public class PropertiesReader implements Closeable {
+
+    /**
+     * The kinds of logical lines in a properties file.
+     */
+    public enum Type {
+
+        BLANK, COMMENT, PROPERTY
+    }
+    /**
+     * Separator used between the physical lines of a continued line.
+     */
+    static final String LINE_BREAK = "\r\n";
+    private final BufferedReader in;
+    private final StringBuilder continued = new StringBuilder();
+    private Type type;
+    private String raw;
+    private String key;
+    private int valueStart;
+
+    public PropertiesReader(Reader reader) {
+        this.in = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+    }
+
+    /**
+     * Advances to the next logical line.
+     *
+     * @return false at the end of the input
+     */
+    public boolean next() throws IOException {
+        String line = in.readLine();
+        key = null;
+        valueStart = -1;
+        if (line == null) {
+            type = null;
+            raw = null;
+            return false;
+        }
+        int start = skipWhitespace(line, 0);
+        if (start == line.length()) {
+            type = Type.BLANK;
+            raw = line;
+            return true;
+        }
+        char first = line.charAt(start);
+        if (first == '#' || first == '!') {
+            type = Type.COMMENT;
+            raw = line;
+            return true;
+        }
+
+        type = Type.PROPERTY;
+        if (continues(line)) {
+            continued.setLength(0);
+            continued.append(line);
+            String next;
+            while (continues(continued) && (next = in.readLine()) != null) {
+                continued.append(LINE_BREAK).append(next);
+            }
+            raw = continued.toString();
+        } else {
+            raw = line;
+        }
+        parseKey(start);
+        return true;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return the line as it was read, physical lines of a continued line
+     * joined by {@code \r\n}
+     */
+    public String getRaw() {
+        return raw;
+    }
+
+    /**
+     * @return the unescaped key, or null if the line isn't a property
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return the unescaped value, or null if the line isn't a property
+     */
+    public String getValue() {
+        return key == null ? null : unescape(raw, valueStart, raw.length());
+    }
+
+    /**
+     * @return the offset in {@link #getRaw()} where the value starts
+     */
+    public int getValueStart() {
+        return valueStart;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void parseKey(int start) {
+        int i = start;
+        int keyEnd = -1;
+        boolean separated = false;
+        while (i < raw.length()) {
+            char c = raw.charAt(i);
+            if (c == '\\') {
+                i = isLineBreak(raw, i + 1) ? skipLineBreak(raw, i + 1) : i + 2;
+                continue;
+            }
+            if (c == '=' || c == ':') {
+                keyEnd = i;
+                separated = true;
+                i++;
+                break;
+            }
+            if (c == ' ' || c == '\t' || c == '\f') {
+                keyEnd = i;
+                break;
+            }
+            i++;
+        }
+        if (keyEnd < 0) {
+            keyEnd = Math.min(i, raw.length());
+        }
+        i = skipWhitespace(raw, Math.min(i, raw.length()));
+        if (!separated && i < raw.length() && (raw.charAt(i) == '=' || raw.charAt(i) == ':')) {
+            i = skipWhitespace(raw, i + 1);
+        }
+        key = unescape(raw, start, keyEnd);
+        valueStart = i;
+    }
+
+    private static int skipWhitespace(String s, int from) {
+        int i = from;
+        while (i < s.length()) {
+            char c = s.charAt(i);
+            if (c == ' ' || c == '\t' || c == '\f') {
+                i++;
+            } else if (c == '\\' && isLineBreak(s, i + 1)) {
+                i = skipLineBreak(s, i + 1);
+            } else {
+                break;
+            }
+        }
+        return i;
+    }
+
+    private static boolean isLineBreak(String s, int i) {
+        return i < s.length() && (s.charAt(i) == '\r' || s.charAt(i) == '\n');
+    }
+
+    /**
+     * Skips the line break at {@code i} and the leading whitespace of the
+     * line that continues after it.
+     */
+    private static int skipLineBreak(String s, int i) {
+        int j = i;
+        if (j < s.length() && s.charAt(j) == '\r') {
+            j++;
+        }
+        if (j < s.length() && s.charAt(j) == '\n') {
+            j++;
+        }
+        while (j < s.length() && (s.charAt(j) == ' ' || s.charAt(j) == '\t' || s.charAt(j) == '\f')) {
+            j++;
+        }
+        return j;
+    }
+
+    /**
+     * @return true if the line ends with an odd number of backslashes
+     */
+    private static boolean continues(CharSequence line) {
+        int slashes = 0;
+        for (int i = line.length() - 1; i >= 0 && line.charAt(i) == '\\'; i--) {
+            slashes++;
+        }
+        return slashes % 2 == 1;
+    }
+
+    /**
+     * Decodes the escapes in {@code s} between {@code from} and {@code to}.
+     *
+     * @throws IllegalArgumentException on a malformed \\uxxxx escape, like
+     * {@link java.util.Properties#load(Reader)}
+     */
+    static String unescape(String s, int from, int to) {
+        int slash = s.indexOf('\\', from);
+        if (slash < 0 || slash >= to) {
+            return s.substring(from, to);
+        }
+        StringBuilder out = new StringBuilder(to - from);
+        out.append(s, from, slash);
+        int i = slash;
+        while (i < to) {
+            char c = s.charAt(i++);
+            if (c != '\\') {
+                out.append(c);
+                continue;
+            }
+            if (i >= to) {
+                //a trailing backslash on the last line is dropped
+                break;
+            }
+            c = s.charAt(i++);
+            switch (c) {
+                case 'u':
+                    if (i + 4 > to) {
+                        throw new IllegalArgumentException("Malformed \\uxxxx encoding.");
+                    }
+                    int value = 0;
+                    for (int j = 0; j < 4; j++) {
+                        int digit = Character.digit(s.charAt(i++), 16);
+                        if (digit < 0) {
+                            throw new IllegalArgumentException("Malformed \\uxxxx encoding.");
+                        }
+                        value = (value << 4) | digit;
+                    }
+                    out.append((char) value);
+                    break;
+                case 't':
+                    out.append('\t');
+                    break;
+                case 'n':
+                    out.append('\n');
+                    break;
+                case 'r':
+                    out.append('\r');
+                    break;
+                case 'f':
+                    out.append('\f');
+                    break;
+                case '\r':
+                case '\n':
+                    //continuation, the next physical line starts after its leading whitespace
+                    i = Math.min(skipLineBreak(s, i - 1), to);
+                    break;
+                default:
+                    out.append(c);
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Writes an unescaped key to {@code out} so it reads back as the same
+     * key, the reverse of {@link #getKey()}. Characters other than the
+     * separators, whitespace, comment markers and backslash are kept as
+     * they are.
+     */
+    static void escapeKey(String key, StringBuilder out) {
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            switch (c) {
+                case '\t':
+                    out.append("\\t");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\f':
+                    out.append("\\f");
+                    break;
+                case ' ':
+                case '=':
+                case ':':
+                case '#':
+                case '!':
+                case '\\':
+                    out.append('\\').append(c);
+                    break;
+                default:
+                    out.append(c);
+            }
+        }
+    }
+}
@@ -0,0 +1,347 @@
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.summit.i18nhelper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.security.DigestInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What the pull goal read on its last run, so unchanged bundles don't have
+ * to be parsed again.
+ *
+ * For every bundle it keeps the size, modification time and content hash of
+ * the base file and its locale siblings, along with the section of the pull
+ * file generated from them. A file whose size and modification time are
+ * unchanged is trusted without being read. When only the modification time
+ * differs the file is hashed, a touched but unchanged file still reuses its
+ * section.
+ */
+public class PullManifest {
+
+    private static final int MAGIC = 0x69313870;
+    private static final int VERSION = 2;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    /**
+     * Files modified this close to the last save may have changed again
+     * within the file system's timestamp resolution, their content is
+     * checked.
+     */
+    private static final long MTIME_RESOLUTION = 2000;
+    private final String settings;
+    private final Map<String, Entry> previous = new HashMap<String, Entry>();
+    private final List<String> previousOrder = new ArrayList<String>();
+    private final Map<String, Entry> current = new LinkedHashMap<String, Entry>();
+    private long savedAt;
+    private Fingerprint output;
+    private boolean modified;
+
+    /**
+     * Creates an empty manifest.
+     *
+     * @param settings the configuration the sections are generated with,
+     * a manifest saved with other settings is not reused
+     */
+    public PullManifest(String settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * Loads the manifest saved in {@code file}.
+     *
+     * @return the manifest, empty if there is no file or it was saved with
+     * other settings
+     * @throws IOException if the file cannot be read
+     */
+    public static PullManifest load(File file, String settings) throws IOException {
+        PullManifest manifest = new PullManifest(settings);
+        DataInputStream in;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        } catch (FileNotFoundException ex) {
+            return manifest;
+        }
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !settings.equals(in.readUTF())) {
+                return manifest;
+            }
+            manifest.savedAt = in.readLong();
+            manifest.output = Fingerprint.read(in);
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String key = in.readUTF();
+                manifest.previous.put(key, Entry.read(in));
+                manifest.previousOrder.add(key);
+            }
+        } finally {
+            in.close();
+        }
+        return manifest;
+    }
+
+    /**
+     * Checks whether a bundle's files are unchanged since the last save.
+     *
+     * Doesn't modify the manifest, bundles can be checked from several
+     * threads while another thread records them with
+     * {@link #put(String, Fingerprint[], String)}.
+     *
+     * @param key identifies the bundle
+     * @param inputs the files the section is generated from, absent files
+     * included
+     * @return the up to date fingerprints of the files, or null if the
+     * section must be generated again
+     */
+    public Fingerprint[] check(String key, List<File> inputs) throws IOException {
+        Entry entry = previous.get(key);
+        if (entry == null || entry.inputs.length != inputs.size()) {
+            return null;
+        }
+        Fingerprint[] refreshed = new Fingerprint[entry.inputs.length];
+        for (int i = 0; i < refreshed.length; i++) {
+            refreshed[i] = entry.inputs[i].check(inputs.get(i), savedAt);
+            if (refreshed[i] == null) {
+                return null;
+            }
+        }
+        return refreshed;
+    }
+
+    /**
+     * @return the section saved for a bundle, or null
+     */
+    public String getSection(String key) {
+        Entry entry = previous.get(key);
+        return entry == null ? null : entry.section;
+    }
+
+    /**
+     * Records the section of a bundle, in output order.
+     *
+     * @param inputs fingerprints of the files it was generated from, taken
+     * while reading them or returned by {@link #check(String, List)}
+     */
+    public synchronized void put(String key, Fingerprint[] inputs, String section) {
+        Entry entry = previous.get(key);
+        if (entry == null || entry.section != section || !Arrays.equals(entry.inputs, inputs)) {
+            //a refreshed fingerprint is a new instance, it is saved too
+            modified = true;
+        }
+        current.put(key, new Entry(inputs, section));
+    }
+
+    /**
+     * @return true if anything was recorded since loading that the saved
+     * manifest doesn't have
+     */
+    public synchronized boolean isModified() {
+        return modified || !previousOrder.equals(new ArrayList<String>(current.keySet()));
+    }
+
+    /**
+     * @return true if {@code file} is the output of the last save and every
+     * bundle recorded since was reused, in the same order
+     */
+    public synchronized boolean isOutputCurrent(File file) {
+        if (output == null || !output.path.equals(file.getPath())
+                || output.size != file.length() || output.mtime != file.lastModified()
+                || !previousOrder.equals(new ArrayList<String>(current.keySet()))) {
+            return false;
+        }
+        for (Map.Entry<String, Entry> entry : current.entrySet()) {
+            if (entry.getValue().section != previous.get(entry.getKey()).section) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes the bundles recorded since loading, replacing the file.
+     *
+     * @param outputFile the pull file generated from them
+     */
+    public synchronized void save(File file, File outputFile) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.exists()) {
+            parent.mkdirs();
+        }
+        File tmp = new File(parent, file.getName() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(settings);
+            out.writeLong(System.currentTimeMillis());
+            new Fingerprint(outputFile.getPath(), outputFile.length(), outputFile.lastModified(), new byte[0]).write(out);
+            out.writeInt(current.size());
+            for (Map.Entry<String, Entry> entry : current.entrySet()) {
+                out.writeUTF(entry.getKey());
+                entry.getValue().write(out);
+            }
+        } finally {
+            out.close();
+        }
+        if (!file.delete() && file.exists() || !tmp.renameTo(file)) {
+            throw new IOException("Could not replace " + file + " with " + tmp);
+        }
+    }
+
+    /**
+     * Opens {@code file} so its content is hashed as it is read, see
+     * {@link Fingerprint#of(File, InputStream)}.
+     */
+    public static InputStream openHashed(File file) throws IOException {
+        return new DigestInputStream(new FileInputStream(file), Digests.md5());
+    }
+
+    private static byte[] hash(File file) throws IOException {
+        InputStream in = openHashed(file);
+        try {
+            byte[] buffer = new byte[8192];
+            while (in.read(buffer) >= 0) {
+            }
+        } finally {
+            in.close();
+        }
+        return ((DigestInputStream) in).getMessageDigest().digest();
+    }
+
+    private static final class Entry {
+
+        private final Fingerprint[] inputs;
+        private final String section;
+
+        Entry(Fingerprint[] inputs, String section) {
+            this.inputs = inputs;
+            this.section = section;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(inputs.length);
+            for (Fingerprint input : inputs) {
+                input.write(out);
+            }
+            //sections can be longer than writeUTF allows
+            byte[] bytes = section.getBytes(UTF8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        static Entry read(DataInputStream in) throws IOException {
+            Fingerprint[] inputs = new Fingerprint[in.readInt()];
+            for (int i = 0; i < inputs.length; i++) {
+                inputs[i] = Fingerprint.read(in);
+            }
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            return new Entry(inputs, new String(bytes, UTF8));
+        }
+    }
+
+    /**
+     * Identifies the content of a file, or its absence.
+     */
+    public static final class Fingerprint {
+
+        private final String path;
+        private final long size;
+        private final long mtime;
+        private final byte[] hash;
+
+        private Fingerprint(String path, long size, long mtime, byte[] hash) {
+            this.path = path;
+            this.size = size;
+            this.mtime = mtime;
+            this.hash = hash;
+        }
+
+        /**
+         * Fingerprints a file that has been read through {@code in}, which
+         * must come from {@link PullManifest#openHashed(File)} and have been
+         * read to the end.
+         */
+        public static Fingerprint of(File file, InputStream in) {
+            return new Fingerprint(file.getPath(), file.length(), file.lastModified(),
+                    ((DigestInputStream) in).getMessageDigest().digest());
+        }
+
+        /**
+         * Fingerprints a file that doesn't exist.
+         */
+        public static Fingerprint absent(File file) {
+            return new Fingerprint(file.getPath(), -1, 0, new byte[0]);
+        }
+
+        /**
+         * @return the fingerprint of {@code file} if its content is still the
+         * one fingerprinted, otherwise null
+         */
+        Fingerprint check(File file, long savedAt) throws IOException {
+            if (!path.equals(file.getPath())) {
+                return null;
+            }
+            long currentSize = file.exists() ? file.length() : -1;
+            if (currentSize != size) {
+                return null;
+            }
+            if (size < 0) {
+                return this;
+            }
+            long currentMtime = file.lastModified();
+            if (currentMtime == mtime && mtime + MTIME_RESOLUTION < savedAt) {
+                return this;
+            }
+            byte[] currentHash = hash(file);
+            if (!Arrays.equals(currentHash, hash)) {
+                return null;
+            }
+            return new Fingerprint(path, currentSize, currentMtime, currentHash);
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeUTF(path);
+            out.writeLong(size);
+            out.writeLong(mtime);
+            out.writeByte(hash.length);
+            out.write(hash);
+        }
+
+        static Fingerprint read(DataInputStream in) throws IOException {
+            String path = in.readUTF();
+            long size = in.readLong();
+            long mtime = in.readLong();
+            byte[] hash = new byte[in.readUnsignedByte()];
+            in.readFully(hash);
+            return new Fingerprint(path, size, mtime, hash);
+        }
+    }
+}
@@ -19,7 +19,13 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.shared.model.fileset.FileSet;
@@ -83,10 +89,39 @@ public class PullMojo
      * @parameter expression="${i18nHelper.removeWhiteSpace}" default-value="false"
      */
     private boolean removeWhiteSpace;
+    /**
+     * If set to true, only bundles that changed since the last pull are
+     * read again, the others are copied from the manifest.
+     *
+     * @parameter expression="${i18nHelper.incremental}" default-value="true"
+     */
+    private boolean incremental;
+    /**
+     * Where the incremental pull keeps track of the bundles it read.
+     *
+     * @parameter expression="${i18nHelper.pullManifest}" default-value="${project.build.directory}/i18nHelper-pull.manifest"
+     */
+    private File manifestFile;
+    /**
+     * Number of threads scanning, reading and formatting bundles, 0 for one
+     * per available processor. The output doesn't depend on it.
+     *
+     * @parameter expression="${i18nHelper.threads}" default-value="0"
+     */
+    private int threads;
+    /**
+     * Directory the metrics of the goal are written to, as
+     * i18nHelper-pull-metrics.json.
+     *
+     * @parameter expression="${i18nHelper.metricsDirectory}" default-value="${project.build.directory}"
+     */
+    private File metricsDirectory;
+    private Metrics metrics;
 
     @Override
     public void execute()
             throws MojoExecutionException {
+        metrics = new Metrics("pull");
         if (languageCodes == null) {
             languageCodes = Collections.EMPTY_LIST;
         } else {
@@ -106,55 +141,78 @@ public class PullMojo
         getLog().info("Output filename: " + outputFileName);
         
         File outFile = new File(f, outputFileName);
+        PullManifest manifest = null;
+        if (incremental) {
+            manifest = loadManifest();
+        }
+        int threadCount = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
         FileWriter w = null;
         try {
-            w = new FileWriter(outFile);
-
-            FileSetManager fsm = new FileSetManager();
-
-            for (FileSet resourceDir : bundleLocations) {
-                String dir = resourceDir.getDirectory();
-                for (String file : fsm.getIncludedFiles(resourceDir)) {
-                    String fullPath = dir + "/" + file;
-
-                    getLog().info(fullPath);
-
-                    w.write("#" + file + "\r\n");
-                    Properties defaults = new Properties();
-                    Map<String, Properties> localizedFiles = new HashMap<String, Properties>();
-                    for (String locale : languageCodes) {
-                        Properties localizedProperties = new Properties();
-                        File localizedFile = new File(fullPath.replaceAll(".properties", "_" + locale + ".properties"));
-                        if (localizedFile.exists()) {
-                            localizedProperties.load(new FileInputStream(localizedFile));
-                            localizedFiles.put(locale, localizedProperties);
-                        }
-                    }
+            getLog().debug("Remove white space: " + removeWhiteSpace);
+            //every stage keeps the submission order, the output is the same with any number of threads
+            List<Future<String[]>> scans = new ArrayList<Future<String[]>>();
+            for (final FileSet resourceDir : bundleLocations) {
+                scans.add(executorService.submit(new Callable<String[]>() {
 
-                    defaults.load(new FileInputStream(new File(fullPath)));
-                    getLog().debug("Remove white space: " + removeWhiteSpace);
-                    for (String prop : defaults.stringPropertyNames()) {
-                        String property = defaults.getProperty(prop);
-                        if(removeWhiteSpace){
-                            property=property.replaceAll("\r", "").replaceAll("\n", "").trim();
-                        }
-                        w.write(prop + "=" + property + "\r\n");
-                        for (String locale : languageCodes) {
-                            String localeProp = prop + "." + locale;
-                            String translation = "";
-                            if (localizedFiles.get(locale) != null) {
-                                translation = localizedFiles.get(locale).getProperty(prop, "");
-                            }
-                            w.write(localeProp + "=" + translation + "\r\n");
-                        }
-                        w.write("\r\n");
+                    @Override
+                    public String[] call() {
+                        long started = System.nanoTime();
+                        String[] files = new FileSetManager().getIncludedFiles(resourceDir);
+                        Arrays.sort(files);
+                        metrics.addPhase("scan", started);
+                        return files;
                     }
+                }));
+            }
+
+            List<Future<PulledBundle>> pulls = new ArrayList<Future<PulledBundle>>();
+            for (int i = 0; i < bundleLocations.length; i++) {
+                String dir = bundleLocations[i].getDirectory();
+                for (String file : get(scans.get(i))) {
+                    pulls.add(executorService.submit(new BundlePull(dir, file, manifest)));
                 }
             }
 
+            List<String> sections = new ArrayList<String>(pulls.size());
+            int parsed = 0;
+            for (Future<PulledBundle> pull : pulls) {
+                PulledBundle bundle = get(pull);
+                if (manifest != null) {
+                    manifest.put(bundle.key, bundle.fingerprints, bundle.section);
+                }
+                if (!bundle.reused) {
+                    parsed++;
+                }
+                sections.add(bundle.section);
+            }
+
+            metrics.count("bundles", sections.size());
+            metrics.count("bundlesParsed", parsed);
+            long writeStarted = System.nanoTime();
+            boolean outputCurrent = manifest != null && manifest.isOutputCurrent(outFile);
+            if (outputCurrent) {
+                getLog().info("All " + sections.size() + " bundles are unchanged, " + outFile + " is up to date.");
+            } else {
+                w = new FileWriter(outFile);
+                for (String section : sections) {
+                    w.write(section);
+                }
+                w.close();
+                w = null;
+                metrics.count(Metrics.BYTES_WRITTEN, outFile.length());
+                if (manifest != null) {
+                    getLog().info("Read " + parsed + " of " + sections.size() + " bundles, the others are unchanged.");
+                }
+            }
+            if (manifest != null && (!outputCurrent || manifest.isModified())) {
+                manifest.save(manifestFile, outFile);
+            }
+            metrics.addPhase("write", writeStarted);
         } catch (IOException e) {
             throw new MojoExecutionException("Error creating file " + outFile, e);
         } finally {
+            executorService.shutdownNow();
             if (w != null) {
                 try {
                     w.close();
@@ -162,6 +220,145 @@ public class PullMojo
                     // ignore
                 }
             }
+            metrics.report(metricsDirectory, getLog());
+        }
+    }
+
+    /**
+     * Waits for a pipeline stage, rethrowing its failure.
+     */
+    private static <T> T get(Future<T> future) throws IOException, MojoExecutionException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while pulling bundles.", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw new MojoExecutionException(ex.getCause().getMessage(), ex.getCause());
+        }
+    }
+
+    private PullManifest loadManifest() {
+        //anything that changes what a section looks like invalidates the manifest
+        String settings = "languageCodes=" + languageCodes + ",removeWhiteSpace=" + removeWhiteSpace;
+        try {
+            return PullManifest.load(manifestFile, settings);
+        } catch (IOException ex) {
+            getLog().warn("Ignoring unreadable pull manifest " + manifestFile + ": " + ex.getMessage());
+            return new PullManifest(settings);
+        }
+    }
+
+    /**
+     * Reuses the section of a bundle from the manifest, or reads the bundle.
+     */
+    private class BundlePull implements Callable<PulledBundle> {
+
+        private final String dir;
+        private final String file;
+        private final PullManifest manifest;
+
+        BundlePull(String dir, String file, PullManifest manifest) {
+            this.dir = dir;
+            this.file = file;
+            this.manifest = manifest;
+        }
+
+        @Override
+        public PulledBundle call() throws IOException {
+            String fullPath = dir + "/" + file;
+            List<File> inputs = new ArrayList<File>();
+            inputs.add(new File(fullPath));
+            for (String locale : languageCodes) {
+                inputs.add(new File(fullPath.replaceAll(".properties", "_" + locale + ".properties")));
+            }
+
+            //the relative name is part of the section, a bundle is only the same if both match
+            String key = file + "|" + fullPath;
+            long started = System.nanoTime();
+            PullManifest.Fingerprint[] fingerprints = manifest == null ? null : manifest.check(key, inputs);
+            if (fingerprints != null) {
+                metrics.addPhase("check", started);
+                getLog().debug("Unchanged: " + fullPath);
+                return new PulledBundle(key, fingerprints, manifest.getSection(key), true);
+            }
+            getLog().info(fullPath);
+            fingerprints = new PullManifest.Fingerprint[inputs.size()];
+            String section = pullBundle(file, inputs, fingerprints);
+            metrics.addPhase("parse", started);
+            return new PulledBundle(key, fingerprints, section, false);
+        }
+    }
+
+    private static class PulledBundle {
+
+        private final String key;
+        private final PullManifest.Fingerprint[] fingerprints;
+        private final String section;
+        private final boolean reused;
+
+        PulledBundle(String key, PullManifest.Fingerprint[] fingerprints, String section, boolean reused) {
+            this.key = key;
+            this.fingerprints = fingerprints;
+            this.section = section;
+            this.reused = reused;
+        }
+    }
+
+    /**
+     * Generates the pull file section of one bundle.
+     *
+     * @param inputs the base file followed by the locale siblings, in
+     * {@code languageCodes} order
+     * @param fingerprints receives the fingerprint of each input
+     */
+    private String pullBundle(String file, List<File> inputs, PullManifest.Fingerprint[] fingerprints) throws IOException {
+        StringBuilder w = new StringBuilder();
+        w.append("#" + file + "\r\n");
+        Properties defaults = new Properties();
+        Map<String, Properties> localizedFiles = new HashMap<String, Properties>();
+        for (int i = 0; i < languageCodes.size(); i++) {
+            File localizedFile = inputs.get(i + 1);
+            if (localizedFile.exists()) {
+                Properties localizedProperties = new Properties();
+                fingerprints[i + 1] = load(localizedProperties, localizedFile);
+                localizedFiles.put(languageCodes.get(i), localizedProperties);
+            } else {
+                fingerprints[i + 1] = PullManifest.Fingerprint.absent(localizedFile);
+            }
+        }
+
+        fingerprints[0] = load(defaults, inputs.get(0));
+        metrics.count(Metrics.KEYS, defaults.size());
+        for (String prop : new TreeSet<String>(defaults.stringPropertyNames())) {
+            String property = defaults.getProperty(prop);
+            if(removeWhiteSpace){
+                property=property.replaceAll("\r", "").replaceAll("\n", "").trim();
+            }
+            w.append(prop + "=" + property + "\r\n");
+            for (String locale : languageCodes) {
+                String localeProp = prop + "." + locale;
+                String translation = "";
+                if (localizedFiles.get(locale) != null) {
+                    translation = localizedFiles.get(locale).getProperty(prop, "");
+                }
+                w.append(localeProp + "=" + translation + "\r\n");
+            }
+            w.append("\r\n");
+        }
+        return w.toString();
+    }
+
+    private static PullManifest.Fingerprint load(Properties properties, File file) throws IOException {
+        InputStream in = PullManifest.openHashed(file);
+        try {
+            properties.load(in);
+        } finally {
+            in.close();
         }
+        return PullManifest.Fingerprint.of(file, in);
     }
 }
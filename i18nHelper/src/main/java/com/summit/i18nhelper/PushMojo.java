@@ -5,6 +5,7 @@
 package com.summit.i18nhelper;
 
 import java.io.*;
+import java.nio.charset.Charset;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
@@ -20,6 +21,8 @@ import org.apache.maven.plugin.MojoFailureException;
  */
 public class PushMojo extends AbstractMojo {
 
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
     /**
      * Location of the file.
      *
@@ -33,6 +36,19 @@ public class PushMojo extends AbstractMojo {
      * @parameter expression="${i18nHelper.translated}"
      */
     private File inputFile;
+    /**
+     * The most locale files kept open at once while pushing.
+     *
+     * @parameter expression="${i18nHelper.maxOpenFiles}" default-value="64"
+     */
+    private int maxOpenFiles;
+    /**
+     * Directory the metrics of the goal are written to, as
+     * i18nHelper-push-metrics.json.
+     *
+     * @parameter expression="${i18nHelper.metricsDirectory}" default-value="${project.build.directory}"
+     */
+    private File metricsDirectory;
 
     @Override
     public void execute() throws MojoExecutionException, MojoFailureException {
@@ -45,8 +61,13 @@ public class PushMojo extends AbstractMojo {
             throw new MojoExecutionException("inputFile cannot be null.");
         }
 
+        Metrics metrics = new Metrics("push");
+        WriterCache writers = new WriterCache(maxOpenFiles, UTF8, true);
+        BufferedReader inputFileReader = null;
         try {
-            BufferedReader inputFileReader = new BufferedReader(new FileReader(inputFile));
+            long started = System.nanoTime();
+            long written = 0;
+            inputFileReader = new BufferedReader(new InputStreamReader(new FileInputStream(inputFile), UTF8));
             String line = inputFileReader.readLine();
 
             String key = null;
@@ -85,9 +106,10 @@ public class PushMojo extends AbstractMojo {
                             File outFile = new File(currentWritingDir + "/" + currentWritingFile + "_" + localeCode + ".properties");
                             String stringToWrite = key + "=" + valueToWrite;
                             getLog().debug("Writing: \"" + stringToWrite + "\" to " + outFile.getPath());
-                            BufferedWriter outWriter = new BufferedWriter(new FileWriter(outFile, true));
-                            outWriter.write(stringToWrite + "\r\n");
-                            outWriter.close();
+                            Writer outWriter = writers.get(outFile);
+                            outWriter.write(stringToWrite);
+                            outWriter.write("\r\n");
+                            written++;
                         }
                     }
                 }
@@ -95,10 +117,28 @@ public class PushMojo extends AbstractMojo {
             }
 
             inputFileReader.close();
+            inputFileReader = null;
+            writers.close();
+            metrics.addPhase("push", started);
+            metrics.count(Metrics.KEYS, written);
+            metrics.count("files", writers.getFileCount());
+            metrics.count("opens", writers.getOpenCount());
+            metrics.count(Metrics.BYTES_WRITTEN, writers.getBytesWritten());
+            getLog().info("Wrote " + writers.getFileCount() + " locale files, " + writers.getOpenCount() + " opens.");
         } catch (FileNotFoundException ex) {
             throw new MojoFailureException(ex.getMessage());
         } catch (IOException ex) {
             throw new MojoExecutionException(ex.getMessage());
+        } finally {
+            try {
+                if (inputFileReader != null) {
+                    inputFileReader.close();
+                }
+                writers.close();
+            } catch (IOException ex) {
+                // ignore, already failing
+            }
+            metrics.report(metricsDirectory, getLog());
         }
     }
 }
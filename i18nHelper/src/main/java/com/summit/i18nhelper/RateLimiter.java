@@ -0,0 +1,79 @@
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.summit.i18nhelper;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket rate limiter.
+ *
+ * The bucket refills at {@code permitsPerSecond} and holds up to
+ * {@code burst} tokens. A caller that finds the bucket empty reserves the
+ * next token and sleeps until it is due, so waiting callers are served in
+ * the order they arrived. {@link #reserve()} reserves a token without
+ * sleeping.
+ */
+public class RateLimiter {
+
+    private final double permitsPerSecond;
+    private final double burst;
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * @param permitsPerSecond the sustained rate, 0 or less for no limit
+     * @param burst how many permits can be taken at once after a quiet period
+     */
+    public RateLimiter(double permitsPerSecond, double burst) {
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = Math.max(1, burst);
+        this.tokens = this.burst;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Takes a permit, waiting for one if needed.
+     */
+    public void acquire() throws InterruptedException {
+        long waitNanos = reserve();
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * Takes a permit without waiting for it, for callers that schedule the
+     * work instead of sleeping.
+     *
+     * @return how long to wait before using the permit in nanoseconds, 0 if
+     * it can be used right away
+     */
+    public long reserve() {
+        if (permitsPerSecond <= 0) {
+            return 0;
+        }
+        synchronized (this) {
+            long now = System.nanoTime();
+            tokens = Math.min(burst, tokens + (now - lastRefill) * permitsPerSecond / TimeUnit.SECONDS.toNanos(1));
+            lastRefill = now;
+            tokens -= 1;
+            if (tokens >= 0) {
+                return 0;
+            }
+            return (long) (-tokens * TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+        }
+    }
+}
@@ -0,0 +1,573 @@
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.summit.i18nhelper;
+
+import com.google.api.AsyncHttpTransport;
+import com.google.api.Callback;
+import com.google.api.CallbackFuture;
+import com.google.api.HttpStatusException;
+import com.google.api.HttpTransport;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * {@link HttpTransport} that keeps the translation workers inside the API
+ * quota.
+ *
+ * Every request takes a permit from a {@link RateLimiter} and a slot from an
+ * adaptive concurrency limit. The limit grows by one per round of successful
+ * requests and is halved whenever Google answers that the rate limit was
+ * exceeded (additive increase, multiplicative decrease). Rate limit errors,
+ * server errors and dropped connections are retried with exponential backoff
+ * and full jitter. A run can be given a budget of requests and translated
+ * characters, a request that would exceed it fails with a
+ * {@link BudgetExceededException}.
+ *
+ * Wrapping an {@link AsyncHttpTransport}, it applies the same limits
+ * without blocking: requests wait for their permit, their slot and their
+ * retry on a timer thread and in a queue instead of on the caller's thread.
+ */
+public class ThrottlingTransport implements HttpTransport, AsyncHttpTransport, Closeable {
+
+    private static final long BASE_BACKOFF_MILLIS = 500;
+    private static final long MAX_BACKOFF_MILLIS = 32000;
+    private final HttpTransport delegate;
+    private final AsyncHttpTransport asyncDelegate;
+    private final ScheduledExecutorService scheduler;
+    private final RateLimiter rateLimiter;
+    private final int maxRetries;
+    private final int maxConcurrency;
+    private final Random random = new Random();
+    private final ReentrantLock limitLock = new ReentrantLock();
+    private final Condition slotFreed = limitLock.newCondition();
+    private double concurrencyLimit;
+    private int inFlight;
+    /**
+     * Asynchronous requests waiting for a slot, and those waiting on the
+     * scheduler, guarded by limitLock.
+     */
+    private final LinkedList<Attempt> waiting = new LinkedList<Attempt>();
+    private final Set<Attempt> delayed = new HashSet<Attempt>();
+    private boolean closed;
+    private long maxRequests;
+    private long maxCharacters;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong characters = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private volatile Metrics metrics;
+
+    /**
+     * @param delegate sends the requests
+     * @param rateLimiter paces the requests
+     * @param maxConcurrency the most requests allowed in flight at once, also
+     * the starting limit
+     * @param maxRetries how many times a failed request is retried
+     */
+    public ThrottlingTransport(HttpTransport delegate, RateLimiter rateLimiter, int maxConcurrency, int maxRetries) {
+        this(delegate, null, rateLimiter, maxConcurrency, maxRetries);
+    }
+
+    /**
+     * Throttles a non-blocking transport, the blocking
+     * {@link #execute(String, URL, Map, String)} waits for {@link #send}.
+     *
+     * @param delegate sends the requests
+     * @param rateLimiter paces the requests
+     * @param maxConcurrency the most requests allowed in flight at once, also
+     * the starting limit
+     * @param maxRetries how many times a failed request is retried
+     */
+    public ThrottlingTransport(AsyncHttpTransport delegate, RateLimiter rateLimiter, int maxConcurrency, int maxRetries) {
+        this(null, delegate, rateLimiter, maxConcurrency, maxRetries);
+    }
+
+    private ThrottlingTransport(HttpTransport delegate, AsyncHttpTransport asyncDelegate, RateLimiter rateLimiter,
+            int maxConcurrency, int maxRetries) {
+        this.delegate = delegate;
+        this.asyncDelegate = asyncDelegate;
+        this.scheduler = asyncDelegate == null ? null : Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "i18nHelper-throttle");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.rateLimiter = rateLimiter;
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.concurrencyLimit = this.maxConcurrency;
+        this.maxRetries = Math.max(0, maxRetries);
+    }
+
+    /**
+     * Limits the run, retries count against the request budget but their
+     * text is only charged once.
+     *
+     * @param maxRequests the most requests to send, 0 for no limit
+     * @param maxCharacters the most characters to send for translation, 0 for
+     * no limit
+     */
+    public void setBudget(long maxRequests, long maxCharacters) {
+        this.maxRequests = maxRequests;
+        this.maxCharacters = maxCharacters;
+    }
+
+    /**
+     * @param metrics receives the latency of every request sent, as
+     * {@code http}, or null
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public String execute(String method, URL url, Map<String, String> headers, String body) throws IOException {
+        if (delegate == null) {
+            return await(send(method, url, headers, body));
+        }
+        int textLength = textLength(url.getQuery()) + textLength(body);
+        for (int attempt = 0;; attempt++) {
+            //failed attempts are not billed, only the text is charged once
+            charge(attempt == 0 ? textLength : 0);
+            acquire();
+            boolean rateLimited = false;
+            IOException failure;
+            long sent = System.nanoTime();
+            try {
+                return delegate.execute(method, url, headers, body);
+            } catch (HttpStatusException ex) {
+                rateLimited = isRateLimited(ex);
+                if (!rateLimited && !isRetryable(ex.getStatusCode())) {
+                    throw ex;
+                }
+                failure = ex;
+            } catch (IOException ex) {
+                if (ex instanceof InterruptedIOException && !(ex instanceof SocketTimeoutException)) {
+                    throw ex;
+                }
+                failure = ex;
+            } finally {
+                release(rateLimited);
+                if (metrics != null) {
+                    metrics.recordLatency("http", sent);
+                }
+            }
+            if (attempt >= maxRetries) {
+                throw failure;
+            }
+            retries.incrementAndGet();
+            backoff(attempt);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * A transport wrapping a blocking one sends the request on the calling
+     * thread before returning.
+     */
+    @Override
+    public CallbackFuture<String> send(String method, URL url, Map<String, String> headers, String body) {
+        CallbackFuture<String> result = new CallbackFuture<String>();
+        if (asyncDelegate == null) {
+            try {
+                result.complete(execute(method, url, headers, body));
+            } catch (IOException ex) {
+                result.fail(ex);
+            }
+            return result;
+        }
+        new Attempt(method, url, headers, body, result).start();
+        return result;
+    }
+
+    /**
+     * Stops the timer thread of a non-blocking transport, the requests still
+     * waiting for a permit, a slot or a retry fail.
+     */
+    @Override
+    public void close() {
+        List<Attempt> dropped;
+        limitLock.lock();
+        try {
+            closed = true;
+            dropped = new ArrayList<Attempt>(waiting);
+            dropped.addAll(delayed);
+            waiting.clear();
+            delayed.clear();
+        } finally {
+            limitLock.unlock();
+        }
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        for (Attempt attempt : dropped) {
+            attempt.result.fail(new IOException("The transport is closed."));
+        }
+    }
+
+    /**
+     * @return the requests sent so far, retries included
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * @return the characters sent for translation so far, not counting
+     * retries
+     */
+    public long getCharacters() {
+        return characters.get();
+    }
+
+    public long getRetries() {
+        return retries.get();
+    }
+
+    /**
+     * @return how many responses said the rate limit was exceeded
+     */
+    public long getThrottled() {
+        return throttled.get();
+    }
+
+    /**
+     * @return the current concurrency limit
+     */
+    public int getConcurrencyLimit() {
+        limitLock.lock();
+        try {
+            return (int) concurrencyLimit;
+        } finally {
+            limitLock.unlock();
+        }
+    }
+
+    /**
+     * Counts a request against the budget, a request the budget rejects is
+     * not sent and not counted.
+     */
+    private void charge(int textLength) throws BudgetExceededException {
+        long sent = requests.incrementAndGet();
+        if (maxRequests > 0 && sent > maxRequests) {
+            requests.decrementAndGet();
+            throw new BudgetExceededException("Request budget of " + maxRequests + " exhausted.");
+        }
+        long total = characters.addAndGet(textLength);
+        if (maxCharacters > 0 && total > maxCharacters) {
+            characters.addAndGet(-textLength);
+            requests.decrementAndGet();
+            throw new BudgetExceededException("Character budget of " + maxCharacters + " exhausted.");
+        }
+    }
+
+    private void acquire() throws InterruptedIOException {
+        try {
+            rateLimiter.acquire();
+            limitLock.lock();
+            try {
+                while (inFlight >= (int) concurrencyLimit) {
+                    slotFreed.await();
+                }
+                inFlight++;
+            } finally {
+                limitLock.unlock();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting to send a request.");
+        }
+    }
+
+    private void release(boolean rateLimited) {
+        List<Attempt> ready = null;
+        limitLock.lock();
+        try {
+            inFlight--;
+            if (rateLimited) {
+                concurrencyLimit = Math.max(1, concurrencyLimit / 2);
+            } else {
+                //+1 once every request of the current window succeeded
+                concurrencyLimit = Math.min(maxConcurrency, concurrencyLimit + 1 / concurrencyLimit);
+            }
+            while (!waiting.isEmpty() && inFlight < (int) concurrencyLimit) {
+                if (ready == null) {
+                    ready = new ArrayList<Attempt>();
+                }
+                ready.add(waiting.poll());
+                inFlight++;
+            }
+            slotFreed.signalAll();
+        } finally {
+            limitLock.unlock();
+        }
+        if (ready != null) {
+            for (Attempt attempt : ready) {
+                attempt.dispatch();
+            }
+        }
+    }
+
+    private void backoff(int attempt) throws InterruptedIOException {
+        try {
+            Thread.sleep(backoffMillis(attempt));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting to retry a request.");
+        }
+    }
+
+    private long backoffMillis(int attempt) {
+        long ceiling = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << Math.min(attempt, 16));
+        synchronized (random) {
+            return (long) (random.nextDouble() * ceiling);
+        }
+    }
+
+    /**
+     * Waits for the result of an asynchronous request.
+     */
+    private static String await(CallbackFuture<String> response) throws IOException {
+        try {
+            return response.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a response.");
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw new IOException(ex.getCause().toString(), ex.getCause());
+        }
+    }
+
+    private boolean isRateLimited(HttpStatusException ex) {
+        boolean limited = ex.getStatusCode() == 429
+                || ex.getStatusCode() == 403 && ex.getBody().toLowerCase().contains("ratelimitexceeded");
+        if (limited) {
+            throttled.incrementAndGet();
+        }
+        return limited;
+    }
+
+    private static boolean isRetryable(int statusCode) {
+        return statusCode == 500 || statusCode == 502 || statusCode == 503 || statusCode == 504;
+    }
+
+    /**
+     * @return the decoded length of the q parameters in a query string or
+     * form body
+     */
+    private static int textLength(String parameters) {
+        if (parameters == null) {
+            return 0;
+        }
+        int length = 0;
+        for (String parameter : parameters.split("&")) {
+            if (parameter.startsWith("q=")) {
+                try {
+                    length += URLDecoder.decode(parameter.substring(2), "UTF-8").length();
+                } catch (UnsupportedEncodingException ex) {
+                    throw new IllegalStateException(ex);
+                } catch (IllegalArgumentException ex) {
+                    length += parameter.length() - 2;
+                }
+            }
+        }
+        return length;
+    }
+
+    /**
+     * An asynchronous request going through the limits, once per try.
+     */
+    private final class Attempt implements Callback<String> {
+
+        private final String method;
+        private final URL url;
+        private final Map<String, String> headers;
+        private final String body;
+        private final CallbackFuture<String> result;
+        private final int textLength;
+        private int attempt;
+        private long sent;
+
+        Attempt(String method, URL url, Map<String, String> headers, String body, CallbackFuture<String> result) {
+            this.method = method;
+            this.url = url;
+            this.headers = headers;
+            this.body = body;
+            this.result = result;
+            this.textLength = textLength(url.getQuery()) + textLength(body);
+        }
+
+        /**
+         * Charges the budget and takes a permit, waiting for it on the scheduler.
+         */
+        void start() {
+            try {
+                charge(attempt == 0 ? textLength : 0);
+            } catch (BudgetExceededException ex) {
+                result.fail(ex);
+                return;
+            }
+            long waitNanos = rateLimiter.reserve();
+            if (waitNanos > 0) {
+                schedule(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        acquire();
+                    }
+                }, waitNanos);
+            } else {
+                acquire();
+            }
+        }
+
+        /**
+         * Takes a slot, or queues for one.
+         */
+        void acquire() {
+            boolean open;
+            limitLock.lock();
+            try {
+                open = !closed;
+                if (open && inFlight >= (int) concurrencyLimit) {
+                    waiting.add(this);
+                    return;
+                }
+                if (open) {
+                    inFlight++;
+                }
+            } finally {
+                limitLock.unlock();
+            }
+            if (open) {
+                dispatch();
+            } else {
+                result.fail(new IOException("The transport is closed."));
+            }
+        }
+
+        void dispatch() {
+            sent = System.nanoTime();
+            asyncDelegate.send(method, url, headers, body).addCallback(this);
+        }
+
+        @Override
+        public void completed(String response) {
+            release(false);
+            record();
+            result.complete(response);
+        }
+
+        @Override
+        public void failed(Exception ex) {
+            boolean rateLimited = false;
+            boolean retryable;
+            if (ex instanceof HttpStatusException) {
+                rateLimited = isRateLimited((HttpStatusException) ex);
+                retryable = rateLimited || isRetryable(((HttpStatusException) ex).getStatusCode());
+            } else {
+                retryable = ex instanceof IOException
+                        && (!(ex instanceof InterruptedIOException) || ex instanceof SocketTimeoutException);
+            }
+            release(rateLimited);
+            record();
+            if (!retryable || attempt >= maxRetries) {
+                result.fail(ex);
+                return;
+            }
+            retries.incrementAndGet();
+            long delay = backoffMillis(attempt);
+            attempt++;
+            schedule(new Runnable() {
+
+                @Override
+                public void run() {
+                    start();
+                }
+            }, TimeUnit.MILLISECONDS.toNanos(delay));
+        }
+
+        private void record() {
+            if (metrics != null) {
+                metrics.recordLatency("http", sent);
+            }
+        }
+
+        private void schedule(final Runnable task, long delayNanos) {
+            boolean open;
+            limitLock.lock();
+            try {
+                open = !closed;
+                if (open) {
+                    delayed.add(this);
+                }
+            } finally {
+                limitLock.unlock();
+            }
+            if (!open) {
+                result.fail(new IOException("The transport is closed."));
+                return;
+            }
+            try {
+                scheduler.schedule(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        limitLock.lock();
+                        try {
+                            if (!delayed.remove(Attempt.this)) {
+                                //failed by close()
+                                return;
+                            }
+                        } finally {
+                            limitLock.unlock();
+                        }
+                        task.run();
+                    }
+                }, delayNanos, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException ex) {
+                result.fail(new IOException("The transport is closed."));
+            }
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.summit.i18nhelper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UTFDataFormatException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The translations a translate run has completed, kept on disk so a run
+ * that fails can be resumed without translating them again.
+ *
+ * The file is an append only log of (key, locale, source digest,
+ * translation) records. Opening it loads what an earlier run recorded, a
+ * partial last record left by a crash is cut off. Records are synced to
+ * disk in groups, every {@link #SYNC_RECORDS} records or
+ * {@link #SYNC_INTERVAL_MILLIS} milliseconds, so a crash loses at most the
+ * last group. A recorded translation is only handed back for the same
+ * source text, a base value edited between the runs is translated again.
+ *
+ * Not thread safe, the goal records translations from the thread applying
+ * them.
+ */
+public class TranslationJournal {
+
+    /**
+     * Records written between two syncs at most.
+     */
+    public static final int SYNC_RECORDS = 1000;
+    /**
+     * Longest time between two syncs, checked when a record is appended.
+     */
+    public static final long SYNC_INTERVAL_MILLIS = 1000;
+    private static final int MAGIC = 0x6931386a;
+    private static final int VERSION = 1;
+    private final File file;
+    private final Map<String, Entry> recorded = new HashMap<String, Entry>();
+    private final ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream();
+    private FileOutputStream fileOut;
+    private DataOutputStream out;
+    private int unsynced;
+    private long lastSync = System.nanoTime();
+    private int written;
+
+    /**
+     * Opens (or creates) the journal stored in {@code file}.
+     *
+     * @throws IOException if the file cannot be read or created
+     */
+    public TranslationJournal(File file) throws IOException {
+        this.file = file;
+        long valid = load();
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.exists()) {
+            parent.mkdirs();
+        }
+        if (valid < file.length()) {
+            //drop a partial last record, or a file that isn't a journal
+            RandomAccessFile truncated = new RandomAccessFile(file, "rw");
+            try {
+                truncated.setLength(valid);
+            } finally {
+                truncated.close();
+            }
+        }
+        fileOut = new FileOutputStream(file, true);
+        out = new DataOutputStream(new BufferedOutputStream(fileOut));
+        if (valid == 0) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            sync();
+        }
+    }
+
+    /**
+     * @return the number of translations an earlier run recorded
+     */
+    public int getRecordedCount() {
+        return recorded.size();
+    }
+
+    /**
+     * @return the number of translations recorded by this run
+     */
+    public int getWrittenCount() {
+        return written;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Looks up what an earlier run translated for {@code key}.
+     *
+     * @param source the text the key has to be translated from now
+     * @return the translation, or null if there is none or it was made from
+     * another source text
+     */
+    public String getTranslation(String key, String locale, String source) {
+        Entry entry = recorded.get(key);
+        if (entry == null || !entry.locale.equals(locale) || !Arrays.equals(entry.sourceDigest, Digests.md5(source))) {
+            return null;
+        }
+        return entry.translation;
+    }
+
+    /**
+     * Records the translation of {@code key}, syncing the file when the
+     * current group is full or old enough.
+     */
+    public void append(String key, String locale, String source, String translation) throws IOException {
+        recordBuffer.reset();
+        DataOutputStream record = new DataOutputStream(recordBuffer);
+        try {
+            record.writeUTF(key);
+            record.writeUTF(locale);
+            record.write(Digests.md5(source));
+            record.writeUTF(translation);
+            record.flush();
+        } catch (UTFDataFormatException ex) {
+            //too long to record, it will be translated again if the run fails
+            return;
+        }
+        //one write per record, so a crash can only leave a partial last record behind
+        recordBuffer.writeTo(out);
+        written++;
+        unsynced++;
+        if (unsynced >= SYNC_RECORDS || System.nanoTime() - lastSync >= SYNC_INTERVAL_MILLIS * 1000000L) {
+            sync();
+        }
+    }
+
+    /**
+     * Writes the records appended so far through to the disk.
+     */
+    public void sync() throws IOException {
+        out.flush();
+        fileOut.getFD().sync();
+        unsynced = 0;
+        lastSync = System.nanoTime();
+    }
+
+    /**
+     * Syncs and closes the file, which is kept for the next run.
+     */
+    public void close() throws IOException {
+        if (out == null) {
+            return;
+        }
+        try {
+            sync();
+        } finally {
+            out.close();
+            out = null;
+        }
+    }
+
+    /**
+     * Closes and deletes the file, once the run's output is written and there
+     * is nothing left to resume.
+     */
+    public void delete() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+        if (!file.delete() && file.exists()) {
+            throw new IOException("Could not delete " + file);
+        }
+    }
+
+    /**
+     * @return the length of the valid part of the file, 0 if there is none
+     */
+    private long load() throws IOException {
+        if (!file.exists()) {
+            return 0;
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        long valid = 0;
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return 0;
+            }
+            long read = 8;
+            valid = read;
+            while (true) {
+                String key = in.readUTF();
+                String locale = in.readUTF();
+                byte[] sourceDigest = new byte[16];
+                in.readFully(sourceDigest);
+                String translation = in.readUTF();
+                recorded.put(key, new Entry(locale, sourceDigest, translation));
+                read += utfLength(key) + utfLength(locale) + sourceDigest.length + utfLength(translation);
+                valid = read;
+            }
+        } catch (EOFException ex) {
+            //anything after the last complete record was a partial write
+            return valid;
+        } catch (UTFDataFormatException ex) {
+            return valid;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @return the bytes writeUTF took for {@code s}
+     */
+    private static int utfLength(String s) {
+        int length = 2;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F) {
+                length++;
+            } else if (c > 0x07FF) {
+                length += 3;
+            } else {
+                length += 2;
+            }
+        }
+        return length;
+    }
+
+    private static final class Entry {
+
+        final String locale;
+        final byte[] sourceDigest;
+        final String translation;
+
+        Entry(String locale, byte[] sourceDigest, String translation) {
+            this.locale = locale;
+            this.sourceDigest = sourceDigest;
+            this.translation = translation;
+        }
+    }
+}
@@ -0,0 +1,439 @@
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.summit.i18nhelper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UTFDataFormatException;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * On-disk translation memory shared between builds and modules.
+ *
+ * Translations are keyed by a digest of the source text plus the source
+ * language, target language and translation engine. The file is an append
+ * only log of records; the newest record for a key wins. Only the
+ * {@code maxEntries} most recently used translations are kept, the file is
+ * compacted down to those when it has grown to twice that size.
+ *
+ * The file can be shared by several builds at once, and by the modules of
+ * a parallel build. It is only read, appended to and compacted while
+ * holding a lock on a {@code .lock} file next to it. New translations are
+ * appended in groups of {@link #FLUSH_RECORDS}, and compacting first reads
+ * what other builds appended since the file was loaded.
+ *
+ * All methods are synchronized, one instance can be shared by the
+ * translation workers.
+ */
+public class TranslationMemory {
+
+    /**
+     * Translations kept in memory before they are appended to the file.
+     */
+    public static final int FLUSH_RECORDS = 256;
+    private static final int MAGIC = 0x6931386d;
+    private static final int VERSION = 1;
+    /**
+     * A file lock is held by the whole JVM, the threads of a parallel build
+     * using the same file take turns here first.
+     */
+    private static final ConcurrentMap<String, Lock> LOCKS = new ConcurrentHashMap<String, Lock>();
+    private final File file;
+    private final File lockFile;
+    private final Lock lock;
+    private final int maxEntries;
+    private final Map<Key, String> entries;
+    private final ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream();
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private int pendingRecords;
+    private IOException persistFailure;
+    private int records;
+    private boolean compactionNeeded;
+    private long hits;
+    private long misses;
+
+    /**
+     * Opens (or creates) the translation memory stored in {@code file}.
+     *
+     * @param file the memory file
+     * @param maxEntries the maximum number of translations to keep
+     * @throws IOException if the file cannot be read or created
+     */
+    public TranslationMemory(File file, final int maxEntries) throws IOException {
+        this.file = file;
+        this.maxEntries = maxEntries;
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.exists()) {
+            parent.mkdirs();
+        }
+        lockFile = new File(parent, file.getName() + ".lock");
+        Lock created = new ReentrantLock();
+        Lock existing = LOCKS.putIfAbsent(lockFile.getCanonicalPath(), created);
+        lock = existing == null ? created : existing;
+        this.entries = new LinkedHashMap<Key, String>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, String> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        FileLock fileLock = lock();
+        try {
+            load();
+            if (compactionNeeded) {
+                compact();
+            }
+        } finally {
+            unlock(fileLock);
+        }
+    }
+
+    /**
+     * Looks up a translation.
+     *
+     * @return the remembered translation, or null if there is none
+     */
+    public synchronized String get(String text, String from, String to, String engine) {
+        String translation = entries.get(new Key(Digests.md5(text), from, to, engine));
+        if (translation == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return translation;
+    }
+
+    /**
+     * Remembers a translation, it is appended to the memory file with the
+     * next group of translations.
+     *
+     * If the file cannot be written the translation is still remembered for
+     * the rest of the run, see {@link #getPersistFailure()}.
+     */
+    public synchronized void put(String text, String from, String to, String engine, String translation) {
+        Key key = new Key(Digests.md5(text), from, to, engine);
+        entries.put(key, translation);
+        if (pending == null) {
+            return;
+        }
+        try {
+            recordBuffer.reset();
+            DataOutputStream record = new DataOutputStream(recordBuffer);
+            writeRecord(record, key, translation);
+            record.flush();
+        } catch (UTFDataFormatException ex) {
+            //too long to store, keep it in memory only
+            return;
+        } catch (IOException ex) {
+            //can't happen with a ByteArrayOutputStream
+            throw new IllegalStateException(ex);
+        }
+        try {
+            recordBuffer.writeTo(pending);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        pendingRecords++;
+        if (pendingRecords >= FLUSH_RECORDS) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes the remaining translations and closes the memory file,
+     * compacting it if it has grown too large.
+     */
+    public synchronized void close() throws IOException {
+        flush();
+        if (persistFailure != null || !compactionNeeded && records <= 2 * maxEntries) {
+            return;
+        }
+        FileLock fileLock = lock();
+        try {
+            //keep what other builds appended since the file was loaded
+            List<Key> used = new ArrayList<Key>(entries.keySet());
+            entries.clear();
+            records = 0;
+            load();
+            for (Key key : used) {
+                //touched again in the order this run used them, the most recent last
+                entries.get(key);
+            }
+            compact();
+        } finally {
+            unlock(fileLock);
+        }
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the error that stopped translations from being written to disk, or null
+     */
+    public synchronized IOException getPersistFailure() {
+        return persistFailure;
+    }
+
+    private void load() throws IOException {
+        if (!file.exists()) {
+            compactionNeeded = true;
+            return;
+        }
+        CountingInputStream counter = new CountingInputStream(new BufferedInputStream(new FileInputStream(file)));
+        DataInputStream in = new DataInputStream(counter);
+        long consumed = 0;
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                //not ours or an older format, start over
+                compactionNeeded = true;
+                return;
+            }
+            consumed = counter.count;
+            while (true) {
+                Key key = new Key(in.readLong(), in.readLong(), in.readUTF(), in.readUTF(), in.readUTF());
+                entries.put(key, in.readUTF());
+                records++;
+                consumed = counter.count;
+            }
+        } catch (EOFException ex) {
+            //anything after the last complete record was a partial write
+            compactionNeeded |= consumed == 0 || consumed != file.length();
+        } catch (UTFDataFormatException ex) {
+            compactionNeeded = true;
+        } finally {
+            in.close();
+        }
+    }
+
+    private void compact() throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.exists()) {
+            parent.mkdirs();
+        }
+        //unique, another JVM may be compacting a memory in the same directory
+        File tmp = File.createTempFile(file.getName(), ".tmp", parent);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        int written = 0;
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            //eldest first, so reloading restores the access order
+            for (Map.Entry<Key, String> entry : entries.entrySet()) {
+                try {
+                    writeRecord(out, entry.getKey(), entry.getValue());
+                    written++;
+                } catch (UTFDataFormatException ex) {
+                    //writeUTF checks the length before writing anything
+                }
+            }
+        } finally {
+            out.close();
+        }
+        if (!file.delete() && file.exists() || !tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Could not replace " + file + " with " + tmp);
+        }
+        records = written;
+        compactionNeeded = false;
+    }
+
+    /**
+     * Appends the pending translations to the file. The file is opened by
+     * name every time, so they go to the current file even if another build
+     * compacted it since.
+     */
+    private void flush() {
+        if (pending == null || pendingRecords == 0) {
+            return;
+        }
+        try {
+            FileLock fileLock = lock();
+            try {
+                FileOutputStream out = new FileOutputStream(file, true);
+                try {
+                    //one write per group, a crash can only leave a partial last record behind
+                    pending.writeTo(out);
+                } finally {
+                    out.close();
+                }
+            } finally {
+                unlock(fileLock);
+            }
+            records += pendingRecords;
+            pending.reset();
+            pendingRecords = 0;
+        } catch (IOException ex) {
+            persistFailure = ex;
+            pending = null;
+        }
+    }
+
+    /**
+     * Takes the lock of the memory file, waiting for other threads and
+     * processes using it.
+     */
+    private FileLock lock() throws IOException {
+        lock.lock();
+        RandomAccessFile lockAccess = null;
+        try {
+            lockAccess = new RandomAccessFile(lockFile, "rw");
+            return lockAccess.getChannel().lock();
+        } catch (IOException ex) {
+            if (lockAccess != null) {
+                lockAccess.close();
+            }
+            lock.unlock();
+            throw ex;
+        } catch (RuntimeException ex) {
+            if (lockAccess != null) {
+                lockAccess.close();
+            }
+            lock.unlock();
+            throw ex;
+        }
+    }
+
+    private void unlock(FileLock fileLock) {
+        try {
+            //closing the channel releases the file lock
+            fileLock.channel().close();
+        } catch (IOException ex) {
+            //released anyway when the channel goes away
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void writeRecord(DataOutputStream out, Key key, String translation) throws IOException {
+        out.writeLong(key.digestHigh);
+        out.writeLong(key.digestLow);
+        out.writeUTF(key.from);
+        out.writeUTF(key.to);
+        out.writeUTF(key.engine);
+        out.writeUTF(translation);
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    private static final class Key {
+
+        final long digestHigh;
+        final long digestLow;
+        final String from;
+        final String to;
+        final String engine;
+
+        Key(byte[] digest, String from, String to, String engine) {
+            this(toLong(digest, 0), toLong(digest, 8), from, to, engine);
+        }
+
+        Key(long digestHigh, long digestLow, String from, String to, String engine) {
+            this.digestHigh = digestHigh;
+            this.digestLow = digestLow;
+            this.from = from == null ? "" : from;
+            this.to = to == null ? "" : to;
+            this.engine = engine == null ? "" : engine;
+        }
+
+        private static long toLong(byte[] bytes, int offset) {
+            long value = 0;
+            for (int i = offset; i < offset + 8; i++) {
+                value = (value << 8) | (bytes[i] & 0xff);
+            }
+            return value;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return digestHigh == other.digestHigh && digestLow == other.digestLow
+                    && from.equals(other.from) && to.equals(other.to) && engine.equals(other.engine);
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = (int) (digestLow ^ (digestLow >>> 32));
+            hash = 31 * hash + to.hashCode();
+            return 31 * hash + from.hashCode();
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.summit.i18nhelper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The source text every translation was made from, kept as a digest per
+ * localized key so the translate goal can tell which translations are out of
+ * date.
+ *
+ * A key whose base value no longer matches its digest has a stale
+ * translation and is translated again. A translation without a digest,
+ * made before the sources were tracked or by hand, is taken as up to date
+ * and its current source is recorded from then on.
+ *
+ * Not thread safe, the goal records sources from the thread applying the
+ * translations.
+ */
+public class TranslationSources {
+
+    private static final int MAGIC = 0x69313873;
+    private static final int VERSION = 1;
+    private final Map<String, byte[]> previous = new HashMap<String, byte[]>();
+    private final Map<String, byte[]> current = new HashMap<String, byte[]>();
+    private String lastSource;
+    private byte[] lastDigest;
+
+    /**
+     * Loads the sources saved in {@code file}.
+     *
+     * @return the sources, empty if there is no file or it isn't a sources
+     * file
+     * @throws IOException if the file cannot be read
+     */
+    public static TranslationSources load(File file) throws IOException {
+        TranslationSources sources = new TranslationSources();
+        DataInputStream in;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        } catch (FileNotFoundException ex) {
+            return sources;
+        }
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return sources;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String key = in.readUTF();
+                byte[] sourceDigest = new byte[16];
+                in.readFully(sourceDigest);
+                sources.previous.put(key, sourceDigest);
+            }
+        } finally {
+            in.close();
+        }
+        return sources;
+    }
+
+    /**
+     * @return the number of keys loaded
+     */
+    public int getRecordedCount() {
+        return previous.size();
+    }
+
+    /**
+     * @param key a localized key, such as {@code label.save.de}
+     * @param source its base value now
+     * @return true if the translation of {@code key} was made from another
+     * source text, false if it was made from this one or isn't tracked yet
+     */
+    public boolean isChanged(String key, String source) {
+        byte[] sourceDigest = previous.get(key);
+        return sourceDigest != null && !Arrays.equals(sourceDigest, digest(source));
+    }
+
+    /**
+     * Records that the translation of {@code key} now matches
+     * {@code source}.
+     */
+    public void put(String key, String source) {
+        current.put(key, digest(source));
+    }
+
+    /**
+     * Keeps the source recorded for {@code key} by the last run, for a key
+     * that is translated again but may not get a translation. A stale key
+     * stays stale until {@link #put(String, String)} records its new source.
+     */
+    public void keep(String key) {
+        byte[] sourceDigest = previous.get(key);
+        if (sourceDigest != null && !current.containsKey(key)) {
+            current.put(key, sourceDigest);
+        }
+    }
+
+    /**
+     * Writes the sources recorded since loading, replacing the file.
+     *
+     * Keys of the other locales are carried over from the loaded file, keys
+     * of {@code locales} that weren't recorded are dropped as they are no
+     * longer in the bundles.
+     *
+     * @param locales the language codes the goal translated to
+     * @return false if the file already held exactly these sources and was
+     * left alone
+     */
+    public boolean save(File file, Collection<String> locales) throws IOException {
+        Map<String, byte[]> saved = new TreeMap<String, byte[]>(current);
+        for (Map.Entry<String, byte[]> entry : previous.entrySet()) {
+            String key = entry.getKey();
+            if (!saved.containsKey(key) && !locales.contains(key.substring(key.lastIndexOf('.') + 1))) {
+                saved.put(key, entry.getValue());
+            }
+        }
+        if (isUnchanged(saved)) {
+            return false;
+        }
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.exists()) {
+            parent.mkdirs();
+        }
+        File tmp = new File(parent, file.getName() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(saved.size());
+            //sorted, the same sources always make the same file
+            for (Map.Entry<String, byte[]> entry : saved.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.write(entry.getValue());
+            }
+        } finally {
+            out.close();
+        }
+        if (!file.delete() && file.exists() || !tmp.renameTo(file)) {
+            throw new IOException("Could not replace " + file + " with " + tmp);
+        }
+        return true;
+    }
+
+    private boolean isUnchanged(Map<String, byte[]> saved) {
+        if (saved.size() != previous.size()) {
+            return false;
+        }
+        for (Map.Entry<String, byte[]> entry : saved.entrySet()) {
+            if (!Arrays.equals(entry.getValue(), previous.get(entry.getKey()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The locale keys of a base value come one after the other and are
+     * checked, then recorded, so the last digest is reused.
+     */
+    private byte[] digest(String text) {
+        if (text.equals(lastSource)) {
+            return lastDigest;
+        }
+        lastDigest = Digests.md5(text);
+        lastSource = text;
+        return lastDigest;
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.summit.i18nhelper;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The translations a run has to do, with identical source strings merged.
+ *
+ * Every (base value, locale) pair is translated once and the result is
+ * handed to all the targets (the keys or lines) that need it. Locales are
+ * given by their id in a {@link LocaleIndex}.
+ *
+ * @param <T> what a translation is written to
+ */
+public class TranslationWorkSet<T> {
+
+    private final LocaleIndex locales;
+    private final Map<Integer, Map<String, List<T>>> byLocale = new LinkedHashMap<Integer, Map<String, List<T>>>();
+    private int keyCount;
+    private int uniqueCount;
+
+    /**
+     * @param locales the locales the work is translated to
+     */
+    public TranslationWorkSet(LocaleIndex locales) {
+        this.locales = locales;
+    }
+
+    /**
+     * Adds a target that needs {@code baseValue} translated to {@code locale}.
+     *
+     * @param locale the id of the locale in the index
+     */
+    public void add(int locale, String baseValue, T target) {
+        Map<String, List<T>> values = byLocale.get(locale);
+        if (values == null) {
+            values = new LinkedHashMap<String, List<T>>();
+            byLocale.put(locale, values);
+        }
+        List<T> targets = values.get(baseValue);
+        if (targets == null) {
+            targets = new ArrayList<T>(1);
+            values.put(baseValue, targets);
+            uniqueCount++;
+        }
+        targets.add(target);
+        keyCount++;
+    }
+
+    /**
+     * @return the number of keys that need a translation
+     */
+    public int getKeyCount() {
+        return keyCount;
+    }
+
+    /**
+     * @return the number of distinct (base value, locale) pairs to translate
+     */
+    public int getUniqueCount() {
+        return uniqueCount;
+    }
+
+    /**
+     * Splits the work into batches of at most {@code batchSize} distinct
+     * strings, each batch having a single target locale.
+     */
+    public List<Batch<T>> batches(int batchSize) {
+        List<Batch<T>> batches = new ArrayList<Batch<T>>();
+        for (Map.Entry<Integer, Map<String, List<T>>> locale : byLocale.entrySet()) {
+            Batch<T> batch = null;
+            for (Map.Entry<String, List<T>> value : locale.getValue().entrySet()) {
+                if (batch == null || batch.values.size() == batchSize) {
+                    batch = new Batch<T>(locale.getKey(), locales.getCode(locale.getKey()));
+                    batches.add(batch);
+                }
+                batch.values.add(value.getKey());
+                batch.targets.add(value.getValue());
+            }
+        }
+        return batches;
+    }
+
+    /**
+     * Distinct strings sent to the translator together, and the targets each
+     * one's translation belongs to.
+     *
+     * The batch is also the slot its translations are stored in: the thread
+     * translating it fills the slot and the one applying the results reads
+     * it, after a handoff such as {@code Future.get()} that makes the
+     * translations visible. Batches share nothing, so no lock is needed.
+     */
+    public static class Batch<T> {
+
+        private final int localeId;
+        private final String locale;
+        private final List<String> values = new ArrayList<String>();
+        private final List<List<T>> targets = new ArrayList<List<T>>();
+        private String[] translations;
+
+        Batch(int localeId, String locale) {
+            this.localeId = localeId;
+            this.locale = locale;
+        }
+
+        /**
+         * @return the id of the target locale in the work set's index
+         */
+        public int getLocaleId() {
+            return localeId;
+        }
+
+        public String getLocale() {
+            return locale;
+        }
+
+        public String[] getValues() {
+            return values.toArray(new String[values.size()]);
+        }
+
+        /**
+         * @return the targets that get the translation of {@code getValues()[index]}
+         */
+        public List<T> getTargets(int index) {
+            return targets.get(index);
+        }
+
+        /**
+         * @return the number of distinct strings
+         */
+        public int size() {
+            return values.size();
+        }
+
+        /**
+         * Stores the translations of {@link #getValues()}, in the same order.
+         */
+        public void setTranslations(String[] translations) {
+            if (translations.length != values.size()) {
+                throw new IllegalArgumentException("Expected " + values.size() + " translations but got " + translations.length);
+            }
+            this.translations = translations;
+        }
+
+        /**
+         * @return the translation of {@code getValues()[index]}, null if the
+         * batch isn't translated yet
+         */
+        public String getTranslation(int index) {
+            return translations == null ? null : translations[index];
+        }
+
+        /**
+         * @return the source string at {@code index}
+         */
+        public String getValue(int index) {
+            return values.get(index);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.summit.i18nhelper;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps buffered writers open on the files being written, so writing many
+ * lines to the same file doesn't reopen it for each one.
+ *
+ * At most {@code maxOpenFiles} files are kept open, the least recently used
+ * one is closed to make room. A closed file is reopened in append mode the
+ * next time it is written to.
+ */
+public class WriterCache implements Closeable {
+
+    private final int maxOpenFiles;
+    private final Charset charset;
+    private final boolean append;
+    private final Map<File, Writer> writers = new LinkedHashMap<File, Writer>(16, 0.75f, true);
+    /**
+     * Length of every file written to before it was first opened.
+     */
+    private final Map<File, Long> opened = new HashMap<File, Long>();
+    private int opens;
+
+    /**
+     * @param maxOpenFiles the most files kept open at once
+     * @param charset the encoding of the files
+     * @param append whether the files are appended to the first time they
+     * are opened, rather than truncated
+     */
+    public WriterCache(int maxOpenFiles, Charset charset, boolean append) {
+        this.maxOpenFiles = Math.max(1, maxOpenFiles);
+        this.charset = charset;
+        this.append = append;
+    }
+
+    /**
+     * @return a writer on {@code file}, valid until the next call
+     */
+    public Writer get(File file) throws IOException {
+        Writer writer = writers.get(file);
+        if (writer == null) {
+            if (writers.size() >= maxOpenFiles) {
+                Iterator<Writer> eldest = writers.values().iterator();
+                Writer evicted = eldest.next();
+                eldest.remove();
+                evicted.close();
+            }
+            boolean reopen = opened.containsKey(file);
+            if (!reopen) {
+                opened.put(file, append ? file.length() : 0L);
+            }
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, append || reopen), charset));
+            writers.put(file, writer);
+            opens++;
+        }
+        return writer;
+    }
+
+    /**
+     * @return the number of files written to
+     */
+    public int getFileCount() {
+        return opened.size();
+    }
+
+    /**
+     * @return how many times a file was opened, more than
+     * {@link #getFileCount()} when files had to be closed to make room
+     */
+    public int getOpenCount() {
+        return opens;
+    }
+
+    /**
+     * @return the bytes added to the files so far, only exact once they are
+     * closed
+     */
+    public long getBytesWritten() {
+        long bytes = 0;
+        for (Map.Entry<File, Long> file : opened.entrySet()) {
+            bytes += file.getKey().length() - file.getValue();
+        }
+        return bytes;
+    }
+
+    /**
+     * Closes every open file.
+     *
+     * @throws IOException the first failure, after trying to close them all
+     */
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (Writer writer : writers.values()) {
+            try {
+                writer.close();
+            } catch (IOException ex) {
+                if (failure == null) {
+                    failure = ex;
+                }
+            }
+        }
+        writers.clear();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -1,7 +1,14 @@
 package com.tecnick.htmlutils.htmlentities;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * Collection of static methods to convert special and extended
@@ -276,31 +283,107 @@ public class HTMLEntities {
      */
     private static final Map htmlentities_map = new HashMap();
     /**
-     * Map to convert html entities in exteden characters.
+     * Resource listing the HTML5 named character references.
      */
-    private static final Map unhtmlentities_map = new HashMap();
+    private static final String HTML5_ENTITIES = "html5-entities.txt";
+    /**
+     * Replacement character for numeric references that are not valid
+     * characters.
+     */
+    private static final char REPLACEMENT = '\uFFFD';
+    /**
+     * What numeric references to 0x80 - 0x9F stand for, HTML5 reads them as
+     * windows-1252 (0 where the byte is unassigned and kept as is).
+     */
+    private static final char[] WINDOWS_1252 = {
+        '\u20AC', 0, '\u201A', '\u0192', '\u201E', '\u2026', '\u2020', '\u2021',
+        '\u02C6', '\u2030', '\u0160', '\u2039', '\u0152', 0, '\u017D', 0,
+        0, '\u2018', '\u2019', '\u201C', '\u201D', '\u2022', '\u2013', '\u2014',
+        '\u02DC', '\u2122', '\u0161', '\u203A', '\u0153', 0, '\u017E', '\u0178'};
+    /**
+     * Trie of the HTML5 entity names. The children of node n are at
+     * {@code trieFirst[n]} to {@code trieFirst[n + 1]} (exclusive) in
+     * {@code trieLabels} and {@code trieChildren}, sorted by label.
+     * {@code trieValues[n]} is the text of the entity ending at node n, or
+     * null. Node 0 is the root.
+     */
+    private static final char[] trieLabels;
+    private static final int[] trieChildren;
+    private static final int[] trieFirst;
+    private static final String[] trieValues;
+
+    //initialized when the class is loaded, which the JVM does once for all threads
+    static {
+        for (int i = 0; i < html_entities_table.length; ++i) {
+            htmlentities_map.put(html_entities_table[i][1],
+                    html_entities_table[i][0]);
+        }
+
+        TrieBuilder root = new TrieBuilder();
+        int nodes = 1;
+        for (Map.Entry<String, String> entity : loadHtml5Entities().entrySet()) {
+            nodes += root.add(entity.getKey(), 0, entity.getValue());
+        }
+        trieLabels = new char[nodes - 1];
+        trieChildren = new int[nodes - 1];
+        trieFirst = new int[nodes + 1];
+        trieValues = new String[nodes];
+        //breadth first, so every node's children get consecutive numbers
+        List<TrieBuilder> queue = new ArrayList<TrieBuilder>(nodes);
+        queue.add(root);
+        int edge = 0;
+        for (int n = 0; n < queue.size(); n++) {
+            TrieBuilder node = queue.get(n);
+            trieValues[n] = node.value;
+            trieFirst[n] = edge;
+            for (Map.Entry<Character, TrieBuilder> child : node.children.entrySet()) {
+                trieLabels[edge] = child.getKey().charValue();
+                trieChildren[edge] = queue.size();
+                queue.add(child.getValue());
+                edge++;
+            }
+        }
+        trieFirst[nodes] = edge;
+    }
 
     //==============================================================================
     // METHODS
     //==============================================================================
     /**
-     * Initialize HTML translation maps.
+     * The translation tables are initialized when the class is loaded, there
+     * is no need to create an instance.
      */
     public HTMLEntities() {
-        initializeEntitiesTables();
     }
 
-    /**
-     * Initialize HTML entities table.
-     */
-    private static void initializeEntitiesTables() {
-        // initialize html translation maps
-        for (int i = 0; i < html_entities_table.length; ++i) {
-            htmlentities_map.put(html_entities_table[i][1],
-                    html_entities_table[i][0]);
-            unhtmlentities_map.put(html_entities_table[i][0],
-                    html_entities_table[i][1]);
+    private static Map<String, String> loadHtml5Entities() {
+        Map<String, String> entities = new TreeMap<String, String>();
+        InputStream resource = HTMLEntities.class.getResourceAsStream(HTML5_ENTITIES);
+        if (resource == null) {
+            throw new IllegalStateException(HTML5_ENTITIES + " is missing from the classpath.");
         }
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(resource, "US-ASCII"));
+            try {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (line.length() == 0 || line.charAt(0) == '#') {
+                        continue;
+                    }
+                    int tab = line.indexOf('\t');
+                    StringBuilder value = new StringBuilder(2);
+                    for (String codePoint : line.substring(tab + 1).split(" ")) {
+                        value.appendCodePoint(Integer.parseInt(codePoint, 16));
+                    }
+                    entities.put(line.substring(0, tab), value.toString());
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException("Could not read " + HTML5_ENTITIES, ex);
+        }
+        return entities;
     }
 
     /**
@@ -323,10 +406,6 @@ public class HTMLEntities {
         if (str == null) {
             return "";
         }
-        //initialize html translation maps table the first time is called
-        if (htmlentities_map.isEmpty()) {
-            initializeEntitiesTables();
-        }
 
         StringBuilder buf = new StringBuilder(); //the otput string buffer
 
@@ -352,66 +431,329 @@ public class HTMLEntities {
      * @param str input string
      * @return formatted string
      * @see #htmlentities(String)
+     * @see #unhtmlentities(CharSequence, StringBuilder)
      */
     public static String unhtmlentities(String str) {
-
-        //initialize html translation maps table the first time is called
-        if (htmlentities_map.isEmpty()) {
-            initializeEntitiesTables();
+        if (str == null || str.indexOf('&') < 0) {
+            return str;
         }
+        StringBuilder buf = new StringBuilder(str.length());
+        unhtmlentities(str, buf);
+        return buf.toString();
+    }
 
-        StringBuilder buf = new StringBuilder();
+    /**
+     * Convert HTML entities to special and extended unicode characters
+     * equivalents, appending the result to {@code buf}.
+     *
+     * All the HTML5 named references are decoded, as well as decimal and
+     * hexadecimal numeric references, numeric references to characters
+     * outside the BMP become surrogate pairs. A reference must end with a
+     * {@code ;}, anything that isn't a known reference is copied as is.
+     *
+     * @param str input string
+     * @param buf receives the decoded string
+     */
+    public static void unhtmlentities(CharSequence str, StringBuilder buf) {
+        int length = str.length();
+        int copied = 0;
+        for (int i = 0; i < length; i++) {
+            if (str.charAt(i) != '&') {
+                continue;
+            }
+            int end = i + 1 < length && str.charAt(i + 1) == '#'
+                    ? decodeNumeric(str, i, buf, copied)
+                    : decodeNamed(str, i, buf, copied);
+            if (end > 0) {
+                copied = end;
+                i = end - 1;
+            }
+        }
+        buf.append(str, copied, length);
+    }
 
-        for (int i = 0; i < str.length(); ++i) {
-            char ch = str.charAt(i);
-            if (ch == '&') {
-                int semi = str.indexOf(';', i + 1);
-                if ((semi == -1) || ((semi - i) > 7)) {
-                    buf.append(ch);
-                    continue;
-                }
-                String entity = str.substring(i, semi + 1);
-                Integer iso;
-                if (entity.charAt(1) == ' ') {
-                    buf.append(ch);
-                    continue;
+    /**
+     * Decodes the named reference starting at {@code amp}, after copying
+     * the text from {@code copied} up to it.
+     *
+     * @return the index after the reference, or -1 if there is none
+     */
+    private static int decodeNamed(CharSequence str, int amp, StringBuilder buf, int copied) {
+        int node = 0;
+        for (int i = amp + 1; i < str.length(); i++) {
+            char c = str.charAt(i);
+            if (c == ';') {
+                String value = trieValues[node];
+                if (value == null) {
+                    return -1;
                 }
-                if (entity.charAt(1) == '#') {
-                    if (entity.charAt(2) == 'x') {
-                        iso = Integer.valueOf(Integer.parseInt(entity.substring(3, entity.length() - 1), 16));
-                    } else {
-                        iso = Integer.valueOf(entity.substring(2, entity.length() - 1));
+                buf.append(str, copied, amp).append(value);
+                return i + 1;
+            }
+            node = child(node, c);
+            if (node < 0) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private static int child(int node, char label) {
+        int low = trieFirst[node];
+        int high = trieFirst[node + 1] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char midLabel = trieLabels[mid];
+            if (midLabel < label) {
+                low = mid + 1;
+            } else if (midLabel > label) {
+                high = mid - 1;
+            } else {
+                return trieChildren[mid];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Decodes the numeric reference starting at {@code amp}, after copying
+     * the text from {@code copied} up to it.
+     *
+     * @return the index after the reference, or -1 if there is none
+     */
+    private static int decodeNumeric(CharSequence str, int amp, StringBuilder buf, int copied) {
+        int i = amp + 2;
+        int radix = 10;
+        if (i < str.length() && (str.charAt(i) == 'x' || str.charAt(i) == 'X')) {
+            radix = 16;
+            i++;
+        }
+        int start = i;
+        int codePoint = 0;
+        for (; i < str.length(); i++) {
+            int digit = Character.digit(str.charAt(i), radix);
+            if (digit < 0) {
+                break;
+            }
+            //saturate instead of overflowing, anything this large is invalid anyway
+            codePoint = Math.min(codePoint * radix + digit, Character.MAX_CODE_POINT + 1);
+        }
+        if (i == start || i == str.length() || str.charAt(i) != ';') {
+            return -1;
+        }
+        buf.append(str, copied, amp);
+        if (codePoint == 0 || codePoint > Character.MAX_CODE_POINT
+                || codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE) {
+            buf.append(REPLACEMENT);
+        } else if (codePoint >= 0x80 && codePoint <= 0x9F && WINDOWS_1252[codePoint - 0x80] != 0) {
+            buf.append(WINDOWS_1252[codePoint - 0x80]);
+        } else {
+            buf.appendCodePoint(codePoint);
+        }
+        return i + 1;
+    }
+
+    /**
+     * A node of the entity trie while it is being built.
+     */
+    private static final class TrieBuilder {
+
+        private final Map<Character, TrieBuilder> children = new TreeMap<Character, TrieBuilder>();
+        private String value;
+
+        /**
+         * @return the number of nodes created
+         */
+        int add(String name, int index, String entityValue) {
+            if (index == name.length()) {
+                value = entityValue;
+                return 0;
+            }
+            Character label = Character.valueOf(name.charAt(index));
+            TrieBuilder child = children.get(label);
+            int created = 0;
+            if (child == null) {
+                child = new TrieBuilder();
+                children.put(label, child);
+                created = 1;
+            }
+            return created + child.add(name, index + 1, entityValue);
+        }
+    }
+
+    // methods to convert special characters
+    /**
+     * Character class for {@link #escape(String, int)} and
+     * {@link #unescape(String, int)}: single quotes and &amp;rsquo;.
+     */
+    public static final int SINGLE_QUOTES = 1;
+    /**
+     * Character class for {@link #escape(String, int)} and
+     * {@link #unescape(String, int)}: double quotes and &amp;quot;.
+     */
+    public static final int DOUBLE_QUOTES = 2;
+    /**
+     * Character class for {@link #escape(String, int)} and
+     * {@link #unescape(String, int)}: both kinds of quotes.
+     */
+    public static final int QUOTES = SINGLE_QUOTES | DOUBLE_QUOTES;
+    /**
+     * Character class for {@link #escape(String, int)} and
+     * {@link #unescape(String, int)}: &lt; and &gt;.
+     */
+    public static final int ANGLE_BRACKETS = 4;
+    /**
+     * Character class for {@link #escape(String, int)} and
+     * {@link #unescape(String, int)}: &amp;.
+     */
+    public static final int AMPERSAND = 8;
+    /**
+     * Numeric references {@link #htmlSingleQuotes(String)} turns into
+     * &amp;rsquo;.
+     */
+    private static final String[] SINGLE_QUOTE_REFERENCES = {"&#039;", "&#145;", "&#146;"};
+    /**
+     * Numeric references {@link #htmlDoubleQuotes(String)} turns into
+     * &amp;quot;.
+     */
+    private static final String[] DOUBLE_QUOTE_REFERENCES = {"&#147;", "&#148;"};
+
+    /**
+     * Replaces the characters of the selected classes with HTML entities in
+     * a single pass.
+     *
+     * Each character of the input is looked at once, so combining classes
+     * doesn't escape the entities another class produced.
+     *
+     * @param str the input string
+     * @param classes the character classes to escape, a combination of
+     * {@link #SINGLE_QUOTES}, {@link #DOUBLE_QUOTES}, {@link #ANGLE_BRACKETS}
+     * and {@link #AMPERSAND}
+     * @return the escaped string, {@code str} itself if nothing changed
+     */
+    public static String escape(final String str, final int classes) {
+        StringBuilder buf = null;
+        int copied = 0;
+        for (int i = 0; i < str.length(); i++) {
+            String replacement = null;
+            int matched = 1;
+            switch (str.charAt(i)) {
+                case '\'':
+                    if ((classes & SINGLE_QUOTES) != 0) {
+                        replacement = "&rsquo;";
                     }
-                } else {
-                    iso = (Integer) unhtmlentities_map.get(entity);
-                }
-                if (iso == null) {
-                    buf.append(entity);
-                } else {
-                    buf.append((char) (iso.intValue()));
+                    break;
+                case '"':
+                    if ((classes & DOUBLE_QUOTES) != 0) {
+                        replacement = "&quot;";
+                    }
+                    break;
+                case '<':
+                    if ((classes & ANGLE_BRACKETS) != 0) {
+                        replacement = "&lt;";
+                    }
+                    break;
+                case '>':
+                    if ((classes & ANGLE_BRACKETS) != 0) {
+                        replacement = "&gt;";
+                    }
+                    break;
+                case '&':
+                    if ((classes & SINGLE_QUOTES) != 0 && (matched = startsWithAny(str, i, SINGLE_QUOTE_REFERENCES)) > 0) {
+                        replacement = "&rsquo;";
+                    } else if ((classes & DOUBLE_QUOTES) != 0 && (matched = startsWithAny(str, i, DOUBLE_QUOTE_REFERENCES)) > 0) {
+                        replacement = "&quot;";
+                    } else if ((classes & AMPERSAND) != 0) {
+                        replacement = "&amp;";
+                        matched = 1;
+                    }
+                    break;
+                default:
+            }
+            if (replacement != null) {
+                if (buf == null) {
+                    buf = new StringBuilder(str.length() + 16);
                 }
-                i = semi;
+                buf.append(str, copied, i).append(replacement);
+                copied = i + matched;
+                i = copied - 1;
+            }
+        }
+        return finish(str, buf, copied);
+    }
+
+    /**
+     * Replaces the HTML entities of the selected classes with the characters
+     * they stand for in a single pass.
+     *
+     * @param str the input string
+     * @param classes the character classes to unescape, a combination of
+     * {@link #SINGLE_QUOTES}, {@link #DOUBLE_QUOTES}, {@link #ANGLE_BRACKETS}
+     * and {@link #AMPERSAND}
+     * @return the unescaped string, {@code str} itself if nothing changed
+     */
+    public static String unescape(final String str, final int classes) {
+        StringBuilder buf = null;
+        int copied = 0;
+        for (int i = str.indexOf('&'); i >= 0; i = str.indexOf('&', i + 1)) {
+            char replacement;
+            int matched;
+            if ((classes & SINGLE_QUOTES) != 0 && str.startsWith("&rsquo;", i)) {
+                replacement = '\'';
+                matched = 7;
+            } else if ((classes & DOUBLE_QUOTES) != 0 && str.startsWith("&quot;", i)) {
+                replacement = '"';
+                matched = 6;
+            } else if ((classes & ANGLE_BRACKETS) != 0 && str.startsWith("&lt;", i)) {
+                replacement = '<';
+                matched = 4;
+            } else if ((classes & ANGLE_BRACKETS) != 0 && str.startsWith("&gt;", i)) {
+                replacement = '>';
+                matched = 4;
+            } else if ((classes & AMPERSAND) != 0 && str.startsWith("&amp;", i)) {
+                replacement = '&';
+                matched = 5;
             } else {
-                buf.append(ch);
+                continue;
             }
+            if (buf == null) {
+                buf = new StringBuilder(str.length());
+            }
+            buf.append(str, copied, i).append(replacement);
+            copied = i + matched;
+            i = copied - 1;
         }
-        return buf.toString();
+        return finish(str, buf, copied);
+    }
+
+    /**
+     * @return the length of the first of {@code prefixes} found at
+     * {@code index}, 0 if none is
+     */
+    private static int startsWithAny(String str, int index, String[] prefixes) {
+        for (String prefix : prefixes) {
+            if (str.startsWith(prefix, index)) {
+                return prefix.length();
+            }
+        }
+        return 0;
+    }
+
+    private static String finish(String str, StringBuilder buf, int copied) {
+        if (buf == null) {
+            return str;
+        }
+        return buf.append(str, copied, str.length()).toString();
     }
 
-    // methods to convert special characters
     /**
      * Replace single quotes characters with HTML entities.
      * 
      * @param str the input string
      * @return string with replaced single quotes
      */
-    public static String htmlSingleQuotes(final String in) {        
-        String str = in;
-        str = str.replaceAll("[\']", "&rsquo;");
-        str = str.replaceAll("&#039;", "&rsquo;");
-        str = str.replaceAll("&#145;", "&rsquo;");
-        str = str.replaceAll("&#146;", "&rsquo;");
-        return str;
+    public static String htmlSingleQuotes(final String in) {
+        return escape(in, SINGLE_QUOTES);
     }
 
     /**
@@ -421,7 +763,7 @@ public class HTMLEntities {
      * @return string with replaced single quotes
      */
     public static String unhtmlSingleQuotes(final String str) {
-        return str.replaceAll("&rsquo;", "\'");
+        return unescape(str, SINGLE_QUOTES);
     }
 
     /**
@@ -431,11 +773,7 @@ public class HTMLEntities {
      * @return string with replaced double quotes
      */
     public static String htmlDoubleQuotes(final String in) {
-        String str = in;
-        str = str.replaceAll("[\"]", "&quot;");
-        str = str.replaceAll("&#147;", "&quot;");
-        str = str.replaceAll("&#148;", "&quot;");
-        return str;
+        return escape(in, DOUBLE_QUOTES);
     }
 
     /**
@@ -445,7 +783,7 @@ public class HTMLEntities {
      * @return string with replaced single quotes
      */
     public static String unhtmlDoubleQuotes(final String str) {
-        return str.replaceAll("&quot;", "\"");
+        return unescape(str, DOUBLE_QUOTES);
     }
 
     /**
@@ -455,10 +793,7 @@ public class HTMLEntities {
      * @return string with replaced quotes
      */
     public static String htmlQuotes(final String in) {
-        String str = in;
-        str = htmlDoubleQuotes(str); //convert double quotes
-        str = htmlSingleQuotes(str); //convert single quotes
-        return str;
+        return escape(in, QUOTES);
     }
 
     /**
@@ -468,10 +803,7 @@ public class HTMLEntities {
      * @return string with replaced quotes
      */
     public static String unhtmlQuotes(final String in) {
-        String str = in;
-        str = unhtmlDoubleQuotes(str); //convert double quotes
-        str = unhtmlSingleQuotes(str); //convert single quotes
-        return str;
+        return unescape(in, QUOTES);
     }
 
     /**
@@ -481,10 +813,7 @@ public class HTMLEntities {
      * @return string with replaced characters
      */
     public static String htmlAngleBrackets(final String in) {
-        String str = in;
-        str = str.replaceAll("<", "&lt;");
-        str = str.replaceAll(">", "&gt;");
-        return str;
+        return escape(in, ANGLE_BRACKETS);
     }
 
     /**
@@ -494,10 +823,7 @@ public class HTMLEntities {
      * @return string with replaced entities
      */
     public static String unhtmlAngleBrackets(final String in) {
-        String str = in;
-        str = str.replaceAll("&lt;", "<");
-        str = str.replaceAll("&gt;", ">");
-        return str;
+        return unescape(in, ANGLE_BRACKETS);
     }
 
     /**
@@ -507,7 +833,7 @@ public class HTMLEntities {
      * @return string with replaced characters
      */
     public static String htmlAmpersand(final String str) {
-        return str.replaceAll("&", "&amp;");
+        return escape(str, AMPERSAND);
     }
 
     /**
@@ -517,6 +843,6 @@ public class HTMLEntities {
      * @return string with replaced entities
      */
     public static String unhtmlAmpersand(final String str) {
-        return str.replaceAll("&amp;", "&");
+        return unescape(str, AMPERSAND);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,180 @@
+/**
+ * NioHttpTransportTest.java
+ *
+ * This file is part of google-api-translate-java.
+ *
+ * google-api-translate-java is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * google-api-translate-java is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with google-api-translate-java. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.google.api;
+
+import static com.google.api.ScriptedHttpServer.drop;
+import static com.google.api.ScriptedHttpServer.reply;
+import static com.google.api.ScriptedHttpServer.replyAndClose;
+import static com.google.api.ScriptedHttpServer.silence;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks {@link NioHttpTransport} against a local server answering with
+ * scripted bytes.
+ */
+public class NioHttpTransportTest extends TestCase {
+
+	private static final Map<String, String> NO_HEADERS = Collections.emptyMap();
+	private static final String OK_HELLO = "HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\nhello";
+	private ScriptedHttpServer server;
+	private NioHttpTransport transport;
+
+	@Override
+	protected void setUp() throws Exception {
+		server = new ScriptedHttpServer();
+		transport = new NioHttpTransport(2, 2000, 2000);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		transport.close();
+		server.close();
+	}
+
+	public void testContentLengthResponse() throws Exception {
+		server.script(reply("HTTP/1.1 200 OK\r\nContent-Type: application/json\r\nContent-Length: 9\r\n\r\n{\"a\":\"e\"}"));
+		assertEquals("{\"a\":\"e\"}", get(transport.send("POST", server.url("/v2"), NO_HEADERS, "q=hi&target=de")));
+		assertEquals(Arrays.asList("POST /v2 q=hi&target=de"), server.getRequests());
+	}
+
+	public void testChunkedResponse() throws Exception {
+		server.script(reply("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"
+				+ "4\r\nhell\r\n"
+				+ "7;ext=1\r\no, worl\r\n"
+				+ "1\r\nd\r\n"
+				+ "0\r\nX-Trailer: yes\r\n\r\n"));
+		assertEquals("hello, world", get(transport.send("GET", server.url("/chunked"), NO_HEADERS, null)));
+	}
+
+	public void testResponseReadUntilClose() throws Exception {
+		server.script(replyAndClose("HTTP/1.0 200 OK\r\nContent-Type: text/plain\r\n\r\nuntil the end"));
+		assertEquals("until the end", get(transport.send("GET", server.url("/close"), NO_HEADERS, null)));
+	}
+
+	public void testKeepAliveConnectionIsReused() throws Exception {
+		server.script(reply(OK_HELLO), reply(OK_HELLO), reply(OK_HELLO));
+		for (int i = 0; i < 3; i++) {
+			assertEquals("hello", get(transport.send("GET", server.url("/" + i), NO_HEADERS, null)));
+		}
+		assertEquals(1, server.getConnections());
+		assertEquals(Arrays.asList("GET /0", "GET /1", "GET /2"), server.getRequests());
+	}
+
+	public void testIdleConnectionClosedByServer() throws Exception {
+		server.script(replyAndClose(OK_HELLO), reply(OK_HELLO));
+		assertEquals("hello", get(transport.send("GET", server.url("/first"), NO_HEADERS, null)));
+		// let the transport see the close while the connection is idle
+		Thread.sleep(200);
+		assertEquals("hello", get(transport.send("GET", server.url("/second"), NO_HEADERS, null)));
+		assertEquals(2, server.getConnections());
+	}
+
+	public void testRequestOnStaleConnectionIsSentAgain() throws Exception {
+		// the server closes the kept alive connection as the second request arrives
+		server.script(reply(OK_HELLO), drop(), reply("HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\nagain"));
+		assertEquals("hello", get(transport.send("GET", server.url("/first"), NO_HEADERS, null)));
+		assertEquals("again", get(transport.send("GET", server.url("/second"), NO_HEADERS, null)));
+		assertEquals(2, server.getConnections());
+		assertEquals(Arrays.asList("GET /first", "GET /second", "GET /second"), server.getRequests());
+	}
+
+	public void testUnansweredRequestOnNewConnectionFails() throws Exception {
+		server.script(drop());
+		final Throwable failure = failure(transport.send("GET", server.url("/dropped"), NO_HEADERS, null));
+		assertTrue(String.valueOf(failure), failure instanceof IOException);
+		assertFalse(failure instanceof HttpStatusException);
+		assertEquals(1, server.getRequests().size());
+	}
+
+	public void testServerErrorStatus() throws Exception {
+		final String body = "{\"error\":{\"code\":503,\"message\":\"Backend Error\"}}";
+		server.script(reply("HTTP/1.1 503 Service Unavailable\r\nContent-Length: " + body.length() + "\r\n\r\n" + body));
+		final Throwable failure = failure(transport.send("GET", server.url("/busy"), NO_HEADERS, null));
+		assertTrue(String.valueOf(failure), failure instanceof HttpStatusException);
+		assertEquals(503, ((HttpStatusException) failure).getStatusCode());
+		assertEquals(body, ((HttpStatusException) failure).getBody());
+	}
+
+	public void testTooManyRequestsStatusKeepsConnection() throws Exception {
+		server.script(reply("HTTP/1.1 429 Too Many Requests\r\nContent-Length: 0\r\n\r\n"), reply(OK_HELLO));
+		final Throwable failure = failure(transport.send("GET", server.url("/limited"), NO_HEADERS, null));
+		assertTrue(String.valueOf(failure), failure instanceof HttpStatusException);
+		assertEquals(429, ((HttpStatusException) failure).getStatusCode());
+		assertEquals("hello", get(transport.send("GET", server.url("/later"), NO_HEADERS, null)));
+		assertEquals(1, server.getConnections());
+	}
+
+	public void testReadTimeout() throws Exception {
+		transport.close();
+		transport = new NioHttpTransport(2, 2000, 200);
+		server.script(silence());
+		final long started = System.nanoTime();
+		final Throwable failure = failure(transport.send("GET", server.url("/slow"), NO_HEADERS, null));
+		assertTrue(String.valueOf(failure), failure instanceof SocketTimeoutException);
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) >= 200);
+	}
+
+	public void testRequestWaitingForConnectionTimesOutToo() throws Exception {
+		transport.close();
+		transport = new NioHttpTransport(1, 2000, 200);
+		server.script(silence(), silence());
+		final CallbackFuture<String> first = transport.send("GET", server.url("/first"), NO_HEADERS, null);
+		final CallbackFuture<String> second = transport.send("GET", server.url("/second"), NO_HEADERS, null);
+		assertTrue(failure(first) instanceof SocketTimeoutException);
+		// only sent once the first connection timed out, nothing else wakes the transport
+		assertTrue(failure(second) instanceof SocketTimeoutException);
+		assertEquals(2, server.getConnections());
+	}
+
+	public void testClosedTransportFailsRequests() throws Exception {
+		transport.close();
+		final Throwable failure = failure(transport.send("GET", new URL("http://127.0.0.1:1/"), NO_HEADERS, null));
+		assertTrue(String.valueOf(failure), failure instanceof IOException);
+	}
+
+	private static String get(final CallbackFuture<String> future) throws Exception {
+		try {
+			return future.get(5, TimeUnit.SECONDS);
+		} catch (ExecutionException ex) {
+			throw new AssertionError("Request failed: " + ex.getCause());
+		}
+	}
+
+	private static Throwable failure(final CallbackFuture<String> future) throws Exception {
+		try {
+			fail("Expected a failure but got " + future.get(5, TimeUnit.SECONDS));
+			return null;
+		} catch (ExecutionException ex) {
+			return ex.getCause();
+		} catch (TimeoutException ex) {
+			throw new AssertionError("The request neither completed nor failed.");
+		}
+	}
+}
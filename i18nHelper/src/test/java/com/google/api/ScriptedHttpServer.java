@@ -0,0 +1,243 @@
+/**
+ * ScriptedHttpServer.java
+ *
+ * This file is part of google-api-translate-java.
+ *
+ * google-api-translate-java is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * google-api-translate-java is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with google-api-translate-java. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.google.api;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.MalformedURLException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A local HTTP server answering with raw bytes scripted by the test, so the
+ * framing and connection handling of a client can be checked exactly.
+ *
+ * Every request takes the next reply off the script, whatever connection it
+ * came on. Public for the tests of the transports wrapping the clients.
+ */
+public final class ScriptedHttpServer implements Closeable {
+
+	private static final Charset ASCII = Charset.forName("US-ASCII");
+	private final ServerSocket server;
+	private final BlockingQueue<Reply> replies = new LinkedBlockingQueue<Reply>();
+	private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+	private final List<Socket> sockets = Collections.synchronizedList(new ArrayList<Socket>());
+	private final AtomicInteger connections = new AtomicInteger();
+	private volatile boolean closed;
+
+	public ScriptedHttpServer() throws IOException {
+		server = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+		final Thread acceptor = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				accept();
+			}
+		}, "scripted-http-accept");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	/**
+	 * A reply written as is, the connection is kept open for the next request.
+	 */
+	public static Reply reply(final String raw) {
+		return new Reply(raw.getBytes(ASCII), false, false);
+	}
+
+	/**
+	 * A reply written as is, then the server closes the connection.
+	 */
+	public static Reply replyAndClose(final String raw) {
+		return new Reply(raw.getBytes(ASCII), true, false);
+	}
+
+	/**
+	 * The server reads the request and closes the connection without answering.
+	 */
+	public static Reply drop() {
+		return new Reply(null, true, false);
+	}
+
+	/**
+	 * The server reads the request and never answers.
+	 */
+	public static Reply silence() {
+		return new Reply(null, false, true);
+	}
+
+	public void script(final Reply... script) {
+		for (final Reply reply : script) {
+			replies.add(reply);
+		}
+	}
+
+	public URL url(final String path) throws MalformedURLException {
+		return new URL("http", "127.0.0.1", server.getLocalPort(), path);
+	}
+
+	/**
+	 * @return The number of connections accepted so far.
+	 */
+	public int getConnections() {
+		return connections.get();
+	}
+
+	/**
+	 * @return The request lines and bodies received, as "POST /path body".
+	 */
+	public List<String> getRequests() {
+		synchronized (requests) {
+			return new ArrayList<String>(requests);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		server.close();
+		synchronized (sockets) {
+			for (final Socket socket : sockets) {
+				socket.close();
+			}
+		}
+	}
+
+	private void accept() {
+		while (!closed) {
+			final Socket socket;
+			try {
+				socket = server.accept();
+			} catch (IOException ex) {
+				return;
+			}
+			connections.incrementAndGet();
+			sockets.add(socket);
+			final Thread handler = new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						serve(socket);
+					} catch (IOException ex) {
+						// the client went away
+					} finally {
+						try {
+							socket.close();
+						} catch (IOException ex) {
+							// already closed
+						}
+					}
+				}
+			}, "scripted-http");
+			handler.setDaemon(true);
+			handler.start();
+		}
+	}
+
+	private void serve(final Socket socket) throws IOException {
+		final InputStream in = socket.getInputStream();
+		final OutputStream out = socket.getOutputStream();
+		while (!closed) {
+			final String requestLine = readLine(in);
+			if (requestLine == null) {
+				return;
+			}
+			int contentLength = 0;
+			for (String header = readLine(in); header != null && header.length() > 0; header = readLine(in)) {
+				if (header.toLowerCase().startsWith("content-length:")) {
+					contentLength = Integer.parseInt(header.substring("content-length:".length()).trim());
+				}
+			}
+			final byte[] body = new byte[contentLength];
+			for (int read = 0; read < contentLength;) {
+				final int n = in.read(body, read, contentLength - read);
+				if (n < 0) {
+					return;
+				}
+				read += n;
+			}
+			final String method = requestLine.substring(0, requestLine.indexOf(' '));
+			final String path = requestLine.substring(method.length() + 1, requestLine.lastIndexOf(' '));
+			requests.add(method + " " + path + (contentLength > 0 ? " " + new String(body, "UTF-8") : ""));
+			final Reply reply;
+			try {
+				reply = replies.poll(5, TimeUnit.SECONDS);
+			} catch (InterruptedException ex) {
+				return;
+			}
+			if (reply == null || reply.silent) {
+				// hold the connection until the client or the test gives up
+				while (in.read() >= 0) {
+					// discard
+				}
+				return;
+			}
+			if (reply.bytes != null) {
+				out.write(reply.bytes);
+				out.flush();
+			}
+			if (reply.close) {
+				return;
+			}
+		}
+	}
+
+	private static String readLine(final InputStream in) throws IOException {
+		final ByteArrayOutputStream line = new ByteArrayOutputStream();
+		for (int b = in.read(); b != '\n'; b = in.read()) {
+			if (b < 0) {
+				return null;
+			}
+			if (b != '\r') {
+				line.write(b);
+			}
+		}
+		return new String(line.toByteArray(), ASCII);
+	}
+
+	/**
+	 * What the server does with a request.
+	 */
+	public static final class Reply {
+
+		private final byte[] bytes;
+		private final boolean close;
+		private final boolean silent;
+
+		private Reply(final byte[] bytes, final boolean close, final boolean silent) {
+			this.bytes = bytes;
+			this.close = close;
+			this.silent = silent;
+		}
+	}
+}
@@ -0,0 +1,116 @@
+/**
+ * UrlConnectionTransportTest.java
+ *
+ * This file is part of google-api-translate-java.
+ *
+ * google-api-translate-java is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * google-api-translate-java is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with google-api-translate-java. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.google.api;
+
+import static com.google.api.ScriptedHttpServer.drop;
+import static com.google.api.ScriptedHttpServer.reply;
+import static com.google.api.ScriptedHttpServer.silence;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks {@link UrlConnectionTransport} against a local server answering with
+ * scripted bytes.
+ */
+public class UrlConnectionTransportTest extends TestCase {
+
+	private static final Map<String, String> NO_HEADERS = Collections.emptyMap();
+	private static final String OK_HELLO = "HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\nhello";
+	private ScriptedHttpServer server;
+	private UrlConnectionTransport transport;
+
+	@Override
+	protected void setUp() throws Exception {
+		server = new ScriptedHttpServer();
+		transport = new UrlConnectionTransport(2, 2000, 2000);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		server.close();
+	}
+
+	public void testPostBodyAndResponse() throws Exception {
+		server.script(reply("HTTP/1.1 200 OK\r\nContent-Type: application/json\r\nContent-Length: 9\r\n\r\n{\"a\":\"e\"}"));
+		assertEquals("{\"a\":\"e\"}", transport.execute("POST", server.url("/v2"), NO_HEADERS, "q=hi&target=de"));
+		assertEquals(Arrays.asList("POST /v2 q=hi&target=de"), server.getRequests());
+	}
+
+	public void testChunkedResponse() throws Exception {
+		server.script(reply("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"
+				+ "4\r\nhell\r\n"
+				+ "8\r\no, world\r\n"
+				+ "0\r\n\r\n"));
+		assertEquals("hello, world", transport.execute("GET", server.url("/chunked"), NO_HEADERS, null));
+	}
+
+	public void testKeepAliveConnectionIsReused() throws Exception {
+		server.script(reply(OK_HELLO), reply(OK_HELLO), reply(OK_HELLO));
+		for (int i = 0; i < 3; i++) {
+			assertEquals("hello", transport.execute("GET", server.url("/" + i), NO_HEADERS, null));
+		}
+		assertEquals(1, server.getConnections());
+		assertEquals(Arrays.asList("GET /0", "GET /1", "GET /2"), server.getRequests());
+	}
+
+	public void testErrorStatusCarriesBodyAndKeepsConnection() throws Exception {
+		final String body = "{\"error\":{\"code\":503,\"message\":\"Backend Error\"}}";
+		server.script(reply("HTTP/1.1 503 Service Unavailable\r\nContent-Length: " + body.length() + "\r\n\r\n" + body),
+				reply(OK_HELLO));
+		try {
+			transport.execute("GET", server.url("/busy"), NO_HEADERS, null);
+			fail("Expected an HttpStatusException");
+		} catch (HttpStatusException ex) {
+			assertEquals(503, ex.getStatusCode());
+			assertEquals(body, ex.getBody());
+		}
+		// the error body was read to the end, so the connection went back to the keep-alive cache
+		assertEquals("hello", transport.execute("GET", server.url("/later"), NO_HEADERS, null));
+		assertEquals(1, server.getConnections());
+	}
+
+	public void testDroppedConnectionFails() throws Exception {
+		server.script(drop(), drop());
+		try {
+			transport.execute("POST", server.url("/dropped"), NO_HEADERS, "q=hi");
+			fail("Expected an IOException");
+		} catch (HttpStatusException ex) {
+			fail("Expected a connection failure, got " + ex);
+		} catch (IOException ex) {
+			// expected
+		}
+	}
+
+	public void testReadTimeout() throws Exception {
+		transport = new UrlConnectionTransport(2, 2000, 200);
+		server.script(silence(), silence());
+		try {
+			transport.execute("POST", server.url("/slow"), NO_HEADERS, "q=hi");
+			fail("Expected a SocketTimeoutException");
+		} catch (SocketTimeoutException ex) {
+			// expected
+		}
+	}
+}
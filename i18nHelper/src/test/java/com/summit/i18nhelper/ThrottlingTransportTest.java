@@ -0,0 +1,208 @@
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.summit.i18nhelper;
+
+import static com.google.api.ScriptedHttpServer.drop;
+import static com.google.api.ScriptedHttpServer.reply;
+
+import com.google.api.CallbackFuture;
+import com.google.api.HttpStatusException;
+import com.google.api.NioHttpTransport;
+import com.google.api.ScriptedHttpServer;
+import com.google.api.UrlConnectionTransport;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+
+/**
+ * Checks the retries, rate limit detection and budget of
+ * {@link ThrottlingTransport} against a local server answering with
+ * scripted bytes.
+ */
+public class ThrottlingTransportTest extends TestCase {
+
+    private static final Map<String, String> NO_HEADERS = Collections.emptyMap();
+    private static final String OK_HELLO = "HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\nhello";
+    private ScriptedHttpServer server;
+    private ThrottlingTransport transport;
+    private NioHttpTransport nioTransport;
+
+    @Override
+    protected void setUp() throws Exception {
+        server = new ScriptedHttpServer();
+        transport = throttled(4, 2);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        transport.close();
+        if (nioTransport != null) {
+            nioTransport.close();
+        }
+        server.close();
+    }
+
+    public void testServerErrorIsRetried() throws Exception {
+        server.script(reply(status(503, "")), reply(OK_HELLO));
+        assertEquals("hello", transport.execute("POST", server.url("/v2"), NO_HEADERS, "q=hello"));
+        assertEquals(2, server.getRequests().size());
+        assertEquals(2, transport.getRequests());
+        assertEquals(1, transport.getRetries());
+        //the text is only charged once
+        assertEquals(5, transport.getCharacters());
+    }
+
+    public void testDroppedConnectionIsRetried() throws Exception {
+        server.script(drop(), reply(OK_HELLO));
+        assertEquals("hello", transport.execute("POST", server.url("/v2"), NO_HEADERS, "q=hello"));
+        assertEquals(1, transport.getRetries());
+    }
+
+    public void testGivesUpAfterMaxRetries() throws Exception {
+        server.script(reply(status(503, "")), reply(status(503, "")), reply(status(503, "")));
+        HttpStatusException failure = statusFailure("q=hello");
+        assertEquals(503, failure.getStatusCode());
+        assertEquals(3, server.getRequests().size());
+        assertEquals(2, transport.getRetries());
+    }
+
+    public void testClientErrorIsNotRetried() throws Exception {
+        server.script(reply(status(400, "{\"error\":{\"message\":\"Bad language\"}}")));
+        assertEquals(400, statusFailure("q=hello").getStatusCode());
+        assertEquals(1, server.getRequests().size());
+        assertEquals(0, transport.getRetries());
+        assertEquals(0, transport.getThrottled());
+    }
+
+    public void testTooManyRequestsHalvesConcurrency() throws Exception {
+        server.script(reply(status(429, "")), reply(OK_HELLO));
+        assertEquals("hello", transport.execute("POST", server.url("/v2"), NO_HEADERS, "q=hello"));
+        assertEquals(1, transport.getThrottled());
+        assertEquals(1, transport.getRetries());
+        assertEquals(2, transport.getConcurrencyLimit());
+    }
+
+    public void testForbiddenRateLimitExceededIsThrottled() throws Exception {
+        server.script(reply(status(403, "{\"error\":{\"errors\":[{\"reason\":\"rateLimitExceeded\"}]}}")), reply(OK_HELLO));
+        assertEquals("hello", transport.execute("POST", server.url("/v2"), NO_HEADERS, "q=hello"));
+        assertEquals(1, transport.getThrottled());
+        assertEquals(2, transport.getConcurrencyLimit());
+    }
+
+    public void testOtherForbiddenIsNotRetried() throws Exception {
+        server.script(reply(status(403, "{\"error\":{\"errors\":[{\"reason\":\"keyInvalid\"}]}}")));
+        assertEquals(403, statusFailure("q=hello").getStatusCode());
+        assertEquals(0, transport.getThrottled());
+        assertEquals(0, transport.getRetries());
+        assertEquals(4, transport.getConcurrencyLimit());
+    }
+
+    public void testRequestBudget() throws Exception {
+        transport.setBudget(1, 0);
+        server.script(reply(OK_HELLO), reply(OK_HELLO));
+        assertEquals("hello", transport.execute("POST", server.url("/v2"), NO_HEADERS, "q=hello"));
+        try {
+            transport.execute("POST", server.url("/v2"), NO_HEADERS, "q=again");
+            fail("Expected a BudgetExceededException");
+        } catch (BudgetExceededException ex) {
+            //expected
+        }
+        //the rejected request was neither sent nor counted
+        assertEquals(1, server.getRequests().size());
+        assertEquals(1, transport.getRequests());
+        assertEquals(5, transport.getCharacters());
+    }
+
+    public void testCharacterBudget() throws Exception {
+        transport.setBudget(0, 5);
+        server.script(reply(OK_HELLO));
+        assertEquals("hello", transport.execute("POST", server.url("/v2"), NO_HEADERS, "q=hello&target=de"));
+        try {
+            transport.execute("POST", server.url("/v2"), NO_HEADERS, "q=hi&target=de");
+            fail("Expected a BudgetExceededException");
+        } catch (BudgetExceededException ex) {
+            //expected
+        }
+        assertEquals(1, server.getRequests().size());
+        assertEquals(1, transport.getRequests());
+        assertEquals(5, transport.getCharacters());
+    }
+
+    public void testRetriesCountAgainstRequestBudget() throws Exception {
+        transport.setBudget(2, 0);
+        server.script(reply(status(503, "")), reply(status(503, "")));
+        try {
+            transport.execute("POST", server.url("/v2"), NO_HEADERS, "q=hello");
+            fail("Expected a BudgetExceededException");
+        } catch (BudgetExceededException ex) {
+            //expected
+        }
+        assertEquals(2, server.getRequests().size());
+        assertEquals(2, transport.getRequests());
+    }
+
+    public void testAsyncServerErrorIsRetried() throws Exception {
+        transport.close();
+        nioTransport = new NioHttpTransport(2, 2000, 2000);
+        transport = new ThrottlingTransport(nioTransport, new RateLimiter(0, 4), 4, 2);
+        server.script(reply(status(503, "")), reply(OK_HELLO));
+        assertEquals("hello", transport.send("POST", server.url("/v2"), NO_HEADERS, "q=hello").get(5, TimeUnit.SECONDS));
+        assertEquals(2, transport.getRequests());
+        assertEquals(1, transport.getRetries());
+        assertEquals(5, transport.getCharacters());
+    }
+
+    public void testAsyncRequestBudget() throws Exception {
+        transport.close();
+        nioTransport = new NioHttpTransport(2, 2000, 2000);
+        transport = new ThrottlingTransport(nioTransport, new RateLimiter(0, 4), 4, 2);
+        transport.setBudget(1, 0);
+        server.script(reply(OK_HELLO), reply(OK_HELLO));
+        assertEquals("hello", transport.send("POST", server.url("/v2"), NO_HEADERS, "q=hello").get(5, TimeUnit.SECONDS));
+        CallbackFuture<String> rejected = transport.send("POST", server.url("/v2"), NO_HEADERS, "q=again");
+        try {
+            rejected.get(5, TimeUnit.SECONDS);
+            fail("Expected a BudgetExceededException");
+        } catch (ExecutionException ex) {
+            assertTrue(String.valueOf(ex.getCause()), ex.getCause() instanceof BudgetExceededException);
+        }
+        assertEquals(1, server.getRequests().size());
+        assertEquals(1, transport.getRequests());
+    }
+
+    private ThrottlingTransport throttled(int maxConcurrency, int maxRetries) {
+        return new ThrottlingTransport(new UrlConnectionTransport(2, 2000, 2000),
+                new RateLimiter(0, maxConcurrency), maxConcurrency, maxRetries);
+    }
+
+    private HttpStatusException statusFailure(String body) throws Exception {
+        try {
+            fail("Expected a failure but got " + transport.execute("POST", server.url("/v2"), NO_HEADERS, body));
+            return null;
+        } catch (HttpStatusException ex) {
+            return ex;
+        } catch (IOException ex) {
+            throw new AssertionError("Expected an HTTP status but got " + ex);
+        }
+    }
+
+    private static String status(int code, String body) {
+        return "HTTP/1.1 " + code + " Status\r\nContent-Length: " + body.length() + "\r\n\r\n" + body;
+    }
+}